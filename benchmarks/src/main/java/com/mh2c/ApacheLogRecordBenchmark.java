@@ -0,0 +1,61 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing access log lines with {@link ApacheLogRecord}, using
+ * lines from {@link LogGenerationEngine} with a fixed seed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Thread)
+public class ApacheLogRecordBenchmark {
+
+  private static final int NUM_LINES = 1024;
+
+  private String[] lines;
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    lines = Fixtures.logLines(NUM_LINES, 3L);
+  }
+
+  @Benchmark
+  public ApacheLogRecord parse() {
+    String line = lines[next];
+    next = (next + 1) % NUM_LINES;
+    return new ApacheLogRecord(line);
+  }
+}
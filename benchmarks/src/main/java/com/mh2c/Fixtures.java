@@ -0,0 +1,210 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Deterministic inputs and harness objects shared by the benchmarks.
+ */
+final class Fixtures {
+
+  private static final String[] MARKUP = {
+    "[[", "]]", "{{Infobox", "}}", "'''", "''", "==", "\n", "\n\n", "* ", "&lt;ref&gt;",
+    "&lt;/ref&gt;", "|", "&amp;"
+  };
+  private static final String[] WORDS = makeWords(50000, 42L);
+
+  private Fixtures() {
+  }
+
+  private static String[] makeWords(int count, long seed) {
+    Random random = new Random(seed);
+    String[] words = new String[count];
+    for (int i = 0; i < count; i++) {
+      // Word lengths roughly follow English text, with an occasional
+      // non-ASCII word
+      int length = 1 + (int) Math.min(14, Math.abs(random.nextGaussian() * 4));
+      StringBuilder sb = new StringBuilder(length);
+      for (int j = 0; j < length; j++) {
+        sb.append((char) ('a' + random.nextInt(26)));
+      }
+      if (random.nextInt(50) == 0) {
+        sb.append('é');
+      }
+      if (random.nextInt(10) == 0) {
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+      }
+      words[i] = sb.toString();
+    }
+    return words;
+  }
+
+  /**
+   * Generates article text resembling escaped Wikipedia markup, with word
+   * frequencies following a Zipf-like distribution.
+   *
+   * @param length approximate length of the text, in characters
+   * @param seed random seed
+   * @return article text
+   */
+  static String articleText(int length, long seed) {
+    Random random = new Random(seed);
+    StringBuilder sb = new StringBuilder(length + 32);
+    while (sb.length() < length) {
+      if (random.nextInt(12) == 0) {
+        sb.append(MARKUP[random.nextInt(MARKUP.length)]);
+      }
+      // Skew toward low indexes, so that a few words are very common
+      int index = (int) (WORDS.length * Math.pow(random.nextDouble(), 4));
+      sb.append(WORDS[index]);
+      sb.append(random.nextInt(15) == 0 ? ". " : " ");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Generates the XML for a Wikipedia dump page.
+   *
+   * @param textLength approximate length of the article text
+   * @param seed random seed
+   * @return page XML
+   */
+  static String wikipediaPage(int textLength, long seed) {
+    return "  <page>\n" +
+      "    <title>Benchmark article " + seed + "</title>\n" +
+      "    <ns>0</ns>\n" +
+      "    <id>" + seed + "</id>\n" +
+      "    <revision>\n" +
+      "      <id>" + (seed * 31) + "</id>\n" +
+      "      <timestamp>2016-12-01T00:00:00Z</timestamp>\n" +
+      "      <contributor>\n" +
+      "        <username>Benchmark</username>\n" +
+      "        <id>1</id>\n" +
+      "      </contributor>\n" +
+      "      <model>wikitext</model>\n" +
+      "      <format>text/x-wiki</format>\n" +
+      "      <text xml:space=\"preserve\">" + articleText(textLength, seed) + "</text>\n" +
+      "      <sha1>0000000000000000000000000000000</sha1>\n" +
+      "    </revision>\n" +
+      "  </page>\n";
+  }
+
+  /**
+   * Generates access log lines with {@link LogGenerationEngine}. Apart from
+   * the times they are generated at, which always have the same width, the
+   * lines are the same for the same seed.
+   *
+   * @param count number of lines
+   * @param seed random seed
+   * @return log lines
+   * @throws IOException if lines cannot be generated
+   * @throws InterruptedException if generation is interrupted
+   */
+  static String[] logLines(int count, long seed) throws IOException, InterruptedException {
+    List<String> lines = new ArrayList<String>(count);
+    LogSink sink = new LogSink() {
+      @Override
+      public void write(byte[] line, int offset, int length) {
+        lines.add(new String(line, offset, length, StandardCharsets.UTF_8));
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    // One thread, so the lines come out in the same order
+    new LogGenerationEngine(seed, LogGenerationEngine.DEFAULT_POOL_SIZE)
+      .generate(sink, 1, 0, count);
+    return lines.toArray(new String[count]);
+  }
+
+  /**
+   * An output collector that feeds everything to a blackhole.
+   */
+  static class BlackholeCollector<K, V> implements OutputCollector<K, V> {
+
+    private final Blackhole blackhole;
+
+    BlackholeCollector(Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void collect(K key, V value) {
+      blackhole.consume(key);
+      blackhole.consume(value);
+    }
+  }
+
+  /**
+   * A reporter with working counters. Reporter.NULL returns no counters,
+   * which the mappers do not expect.
+   */
+  static class CountingReporter implements Reporter {
+
+    private final Counters counters = new Counters();
+
+    @Override
+    public void progress() {
+    }
+
+    @Override
+    public void setStatus(String status) {
+    }
+
+    @Override
+    public Counters.Counter getCounter(Enum<?> name) {
+      return counters.findCounter(name);
+    }
+
+    @Override
+    public Counters.Counter getCounter(String group, String name) {
+      return counters.findCounter(group, name);
+    }
+
+    @Override
+    public void incrCounter(Enum<?> key, long amount) {
+      counters.incrCounter(key, amount);
+    }
+
+    @Override
+    public void incrCounter(String group, String counter, long amount) {
+      counters.incrCounter(group, counter, amount);
+    }
+
+    @Override
+    public InputSplit getInputSplit() {
+      throw new UnsupportedOperationException("No input split in benchmarks");
+    }
+
+    @Override
+    public float getProgress() {
+      return 0.0f;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link WikipediaDumpLoaderMapper#map} on single pages of
+ * different sizes, with each page parser.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Thread)
+public class WikipediaDumpLoaderMapperBenchmark {
+
+  @Param({ WikipediaPageParser.DOM, WikipediaPageParser.STAX })
+  public String parser;
+
+  @Param({ "4096", "65536", "1048576" })
+  public int textLength;
+
+  private WikipediaDumpLoaderMapper mapper;
+  private Text page;
+  private Text empty;
+  private Fixtures.BlackholeCollector<Text, Text> output;
+  private Fixtures.CountingReporter reporter;
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    JobConf conf = new JobConf();
+    conf.set(WikipediaPageParser.PARSER_PROPERTY, parser);
+    mapper = new WikipediaDumpLoaderMapper();
+    mapper.configure(conf);
+
+    page = new Text(Fixtures.wikipediaPage(textLength, 1L));
+    empty = new Text();
+    output = new Fixtures.BlackholeCollector<Text, Text>(blackhole);
+    reporter = new Fixtures.CountingReporter();
+  }
+
+  @Benchmark
+  public void map() throws IOException {
+    mapper.map(page, empty, output, reporter);
+  }
+}
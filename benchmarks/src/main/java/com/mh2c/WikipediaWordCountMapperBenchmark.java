@@ -0,0 +1,85 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link WikipediaWordCountMapper#map} on long article bodies, with
+ * each tokenizer, and with and without in-mapper combining. With combining,
+ * the aggregation map reaches a steady state after warmup, since the
+ * vocabulary is fixed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Thread)
+public class WikipediaWordCountMapperBenchmark {
+
+  @Param({ WordTokenizer.WHITESPACE, WordTokenizer.UNICODE })
+  public String tokenizer;
+
+  @Param({ "false", "true" })
+  public boolean inMapperCombining;
+
+  @Param({ "65536", "1048576" })
+  public int textLength;
+
+  private WikipediaWordCountMapper mapper;
+  private Text title;
+  private Text text;
+  private Fixtures.BlackholeCollector<Text, IntWritable> output;
+  private Fixtures.CountingReporter reporter;
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    JobConf conf = new JobConf();
+    conf.set(WordTokenizer.TOKENIZER_PROPERTY, tokenizer);
+    conf.setBoolean(WikipediaWordCountMapper.IN_MAPPER_COMBINING_PROPERTY, inMapperCombining);
+    mapper = new WikipediaWordCountMapper();
+    mapper.configure(conf);
+
+    title = new Text("Benchmark article");
+    text = new Text(Fixtures.articleText(textLength, 2L));
+    output = new Fixtures.BlackholeCollector<Text, IntWritable>(blackhole);
+    reporter = new Fixtures.CountingReporter();
+  }
+
+  @Benchmark
+  public void map() throws IOException {
+    mapper.map(title, text, output, reporter);
+  }
+}
@@ -0,0 +1,76 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link WikipediaWordCountReducer#reduce} for words with different
+ * numbers of incoming counts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Thread)
+public class WikipediaWordCountReducerBenchmark {
+
+  @Param({ "1", "100", "10000" })
+  public int numValues;
+
+  private WikipediaWordCountReducer reducer;
+  private Text word;
+  private List<IntWritable> values;
+  private Fixtures.BlackholeCollector<Text, IntWritable> output;
+  private Fixtures.CountingReporter reporter;
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    reducer = new WikipediaWordCountReducer();
+    word = new Text("benchmark");
+    values = new ArrayList<IntWritable>(numValues);
+    for (int i = 0; i < numValues; i++) {
+      values.add(new IntWritable(1 + i % 7));
+    }
+    output = new Fixtures.BlackholeCollector<Text, IntWritable>(blackhole);
+    reporter = new Fixtures.CountingReporter();
+  }
+
+  @Benchmark
+  public void reduce() throws IOException {
+    reducer.reduce(word, values.iterator(), output, reporter);
+  }
+}
@@ -0,0 +1,129 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Compresses and decompresses a sample file, such as a piece of a Wikipedia
+ * dump, with each codec available to the ch09 jobs, and prints the
+ * compression ratio and throughput of each. Use it to choose the value of
+ * {@value Codecs#CODEC_PROPERTY} for a cluster; codecs that need the native
+ * Hadoop library are reported as unavailable without it.
+ */
+public class CodecBenchmark extends Configured implements Tool {
+
+  @Override
+  public int run(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Expected arguments: sample file [passes]");
+      return 1;
+    }
+    Configuration conf = getConf();
+    byte[] sample = readSample(conf, new Path(args[0]));
+    int passes = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    System.out.printf("%-8s %10s %8s %14s %14s\n", "codec", "bytes", "ratio",
+                      "compress MB/s", "decompress MB/s");
+    for (Map.Entry<String, Class<? extends CompressionCodec>> entry : Codecs.CODECS.entrySet()) {
+      CompressionCodec codec = ReflectionUtils.newInstance(entry.getValue(), conf);
+      try {
+        byte[] compressed = null;
+        long compressNanos = Long.MAX_VALUE;
+        long decompressNanos = Long.MAX_VALUE;
+        for (int i = 0; i < passes; i++) {
+          long start = System.nanoTime();
+          compressed = compress(codec, sample);
+          compressNanos = Math.min(compressNanos, System.nanoTime() - start);
+
+          start = System.nanoTime();
+          decompress(codec, compressed);
+          decompressNanos = Math.min(decompressNanos, System.nanoTime() - start);
+        }
+        System.out.printf("%-8s %10d %8.3f %14.1f %14.1f\n", entry.getKey(), compressed.length,
+                          (double) compressed.length / sample.length,
+                          megabytesPerSecond(sample.length, compressNanos),
+                          megabytesPerSecond(sample.length, decompressNanos));
+      } catch (RuntimeException | UnsatisfiedLinkError e) {
+        System.out.printf("%-8s unavailable: %s\n", entry.getKey(), e.getMessage());
+      }
+    }
+    return 0;
+  }
+
+  private static byte[] readSample(Configuration conf, Path path) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    // Decompress the sample if needed, e.g., a piece of a .xml.bz2 dump
+    CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(path);
+    InputStream in = fs.open(path);
+    if (codec != null) {
+      in = codec.createInputStream(in);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      IOUtils.copyBytes(in, out, 64 * 1024, false);
+    } finally {
+      in.close();
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] compress(CompressionCodec codec, byte[] data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2);
+    OutputStream out = codec.createOutputStream(bytes);
+    out.write(data);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private static void decompress(CompressionCodec codec, byte[] data) throws IOException {
+    InputStream in = codec.createInputStream(new ByteArrayInputStream(data));
+    byte[] buffer = new byte[64 * 1024];
+    try {
+      while (in.read(buffer) > 0) {
+        // discard
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static double megabytesPerSecond(long bytes, long nanos) {
+    return (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int exitCode = ToolRunner.run(new CodecBenchmark(), args);
+    System.exit(exitCode);
+  }
+}
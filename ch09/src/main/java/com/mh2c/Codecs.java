@@ -0,0 +1,96 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.io.compress.SnappyCodec;
+
+/**
+ * Compression codec choices for the ch09 jobs, selected by short name.
+ */
+final class Codecs {
+
+  /**
+   * Job property naming the codec to use when compression is enabled.
+   */
+  static final String CODEC_PROPERTY = "mh2c.compress.codec";
+  static final String DEFAULT_CODEC = "snappy";
+
+  static final Map<String, Class<? extends CompressionCodec>> CODECS =
+    new LinkedHashMap<String, Class<? extends CompressionCodec>>();
+  static {
+    CODECS.put("snappy", SnappyCodec.class);
+    CODECS.put("lz4", Lz4Codec.class);
+    CODECS.put("gzip", GzipCodec.class);
+    CODECS.put("bzip2", BZip2Codec.class);
+  }
+
+  private Codecs() {
+  }
+
+  /**
+   * Gets the codec class named in a configuration.
+   *
+   * @param conf configuration
+   * @return codec class
+   * @throws IllegalArgumentException if the codec name is unknown
+   */
+  static Class<? extends CompressionCodec> getCodecClass(Configuration conf) {
+    String name = conf.get(CODEC_PROPERTY, DEFAULT_CODEC);
+    Class<? extends CompressionCodec> codecClass = CODECS.get(name);
+    if (codecClass == null) {
+      throw new IllegalArgumentException("Unknown codec " + name + ", expected one of " +
+                                         CODECS.keySet());
+    }
+    return codecClass;
+  }
+
+  /**
+   * Prints how many bytes compression saved.
+   *
+   * @param what description of the data
+   * @param rawBytes uncompressed size
+   * @param compressedBytes compressed size
+   */
+  static void printSavings(String what, long rawBytes, long compressedBytes) {
+    System.out.printf("%s: %d bytes raw, %d bytes compressed, %d bytes saved (%.1f%%)\n",
+                      what, rawBytes, compressedBytes, rawBytes - compressedBytes,
+                      rawBytes == 0 ? 0.0 : 100.0 * (rawBytes - compressedBytes) / rawBytes);
+  }
+
+  /**
+   * Prints how many bytes several steps together, such as combining and
+   * compression, saved.
+   *
+   * @param what description of the data
+   * @param how description of the steps
+   * @param bytesBefore size before the steps
+   * @param bytesAfter size after the steps
+   */
+  static void printReduction(String what, String how, long bytesBefore, long bytesAfter) {
+    System.out.printf("%s: %d bytes before %s, %d bytes after, %d bytes saved (%.1f%%)\n",
+                      what, bytesBefore, how, bytesAfter, bytesBefore - bytesAfter,
+                      bytesBefore == 0 ? 0.0 : 100.0 * (bytesBefore - bytesAfter) / bytesBefore);
+  }
+}
@@ -0,0 +1,194 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * A Count-Min Sketch over byte strings. Estimates never undercount; with
+ * probability 1 - delta, an estimate overcounts by at most epsilon times
+ * the total count, where width = ceil(e / epsilon) and
+ * depth = ceil(ln(1 / delta)). Sketches with the same dimensions can be
+ * merged.
+ */
+class CountMinSketch implements Writable {
+
+  private int depth;
+  private int width;
+  private long[] table;
+  private long totalCount;
+
+  /**
+   * Creates an empty sketch, for deserialization.
+   */
+  CountMinSketch() {
+  }
+
+  /**
+   * Creates a sketch with the given dimensions.
+   *
+   * @param depth number of rows (hash functions)
+   * @param width number of counters per row
+   */
+  CountMinSketch(int depth, int width) {
+    if (depth < 1 || width < 1) {
+      throw new IllegalArgumentException("Depth and width must be positive");
+    }
+    this.depth = depth;
+    this.width = width;
+    table = new long[depth * width];
+  }
+
+  /**
+   * Creates a sketch sized for error bounds.
+   *
+   * @param epsilon relative error, as a fraction of the total count
+   * @param delta probability of exceeding the error
+   * @return sketch
+   */
+  static CountMinSketch forErrorBounds(double epsilon, double delta) {
+    return new CountMinSketch((int) Math.ceil(Math.log(1.0 / delta)),
+                              (int) Math.ceil(Math.E / epsilon));
+  }
+
+  int getDepth() {
+    return depth;
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * @return the maximum amount an estimate may overcount by, with
+   * probability 1 - delta
+   */
+  long getErrorBound() {
+    return (long) Math.ceil(Math.E / width * totalCount);
+  }
+
+  /**
+   * Adds to the count for an item and returns its new estimate.
+   *
+   * @param bytes buffer holding the item
+   * @param start start of the item in the buffer
+   * @param length length of the item in bytes
+   * @param count amount to add
+   * @return estimated count for the item, after adding
+   */
+  long add(byte[] bytes, int start, int length, long count) {
+    long hash = hash(bytes, start, length);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      int index = row * width + bucket(h1, h2, row);
+      table[index] += count;
+      estimate = Math.min(estimate, table[index]);
+    }
+    totalCount += count;
+    return estimate;
+  }
+
+  /**
+   * Estimates the count for an item.
+   *
+   * @param bytes buffer holding the item
+   * @param start start of the item in the buffer
+   * @param length length of the item in bytes
+   * @return estimated count
+   */
+  long estimate(byte[] bytes, int start, int length) {
+    long hash = hash(bytes, start, length);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, table[row * width + bucket(h1, h2, row)]);
+    }
+    return estimate;
+  }
+
+  /**
+   * Adds the counts from another sketch into this one.
+   *
+   * @param other sketch to merge
+   * @throws IllegalArgumentException if the sketches have different
+   * dimensions
+   */
+  void merge(CountMinSketch other) {
+    if (other.depth != depth || other.width != width) {
+      throw new IllegalArgumentException("Cannot merge sketches with different dimensions");
+    }
+    for (int i = 0; i < table.length; i++) {
+      table[i] += other.table[i];
+    }
+    totalCount += other.totalCount;
+  }
+
+  // Derives the row's bucket from two base hashes (Kirsch and Mitzenmacher)
+  private int bucket(int h1, int h2, int row) {
+    int combined = h1 + row * h2;
+    return (combined & Integer.MAX_VALUE) % width;
+  }
+
+  // 64-bit FNV-1a, with a final mix so that both halves are usable
+  private static long hash(byte[] bytes, int start, int length) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = start; i < start + length; i++) {
+      hash ^= bytes[i] & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(depth);
+    out.writeInt(width);
+    out.writeLong(totalCount);
+    for (long counter : table) {
+      out.writeLong(counter);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    int newDepth = in.readInt();
+    int newWidth = in.readInt();
+    if (table == null || newDepth != depth || newWidth != width) {
+      depth = newDepth;
+      width = newWidth;
+      table = new long[depth * width];
+    }
+    totalCount = in.readLong();
+    for (int i = 0; i < table.length; i++) {
+      table[i] = in.readLong();
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapRunnable;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * A map runner that runs several mappers on separate threads in one task.
+ * Unlike Hadoop's MultithreadedMapRunner, which shares one mapper across
+ * all of its threads, each thread here gets its own mapper instance and its
+ * own key and value objects, so mappers that reuse state between calls need
+ * not be thread-safe. Reads from the record reader and writes to the output
+ * collector are serialized.
+ *
+ * The number of threads is set by the {@value #THREADS_PROPERTY} job
+ * property.
+ */
+public class ThreadConfinedMapRunner<K1, V1, K2, V2> implements MapRunnable<K1, V1, K2, V2> {
+
+  static final String THREADS_PROPERTY = "mh2c.maprunner.threads";
+
+  private JobConf job;
+  private int numThreads;
+
+  /**
+   * Configures a job to use this map runner if more than one map thread is
+   * requested.
+   *
+   * @param conf job configuration
+   */
+  static void configureJob(JobConf conf) {
+    if (conf.getInt(THREADS_PROPERTY, 1) > 1) {
+      conf.setMapRunnerClass(ThreadConfinedMapRunner.class);
+    }
+  }
+
+  @Override
+  public void configure(JobConf job) {
+    this.job = job;
+    numThreads = Math.max(1, job.getInt(THREADS_PROPERTY, 1));
+  }
+
+  @Override
+  public void run(final RecordReader<K1, V1> input, OutputCollector<K2, V2> output,
+                  final Reporter reporter) throws IOException {
+    final OutputCollector<K2, V2> syncOutput = new SynchronizedOutputCollector<K2, V2>(output);
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    try {
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            runMapper(input, syncOutput, reporter);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while mapping", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void runMapper(RecordReader<K1, V1> input, OutputCollector<K2, V2> output,
+                         Reporter reporter) throws IOException {
+    Mapper<K1, V1, K2, V2> mapper = ReflectionUtils.newInstance(job.getMapperClass(), job);
+    try {
+      K1 key = input.createKey();
+      V1 value = input.createValue();
+      while (!Thread.currentThread().isInterrupted()) {
+        synchronized (input) {
+          if (!input.next(key, value)) {
+            break;
+          }
+        }
+        mapper.map(key, value, output, reporter);
+      }
+    } finally {
+      mapper.close();
+    }
+  }
+
+  private static class SynchronizedOutputCollector<K, V> implements OutputCollector<K, V> {
+
+    private final OutputCollector<K, V> output;
+
+    SynchronizedOutputCollector(OutputCollector<K, V> output) {
+      this.output = output;
+    }
+
+    @Override
+    public synchronized void collect(K key, V value) throws IOException {
+      output.collect(key, value);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * A mergeable summary of word frequencies from one map task: a Count-Min
+ * Sketch over every word seen, plus the words that were candidates for the
+ * top K.
+ */
+class TopWordsSummary implements Writable {
+
+  private CountMinSketch sketch = new CountMinSketch();
+  private List<Text> candidates = new ArrayList<Text>();
+
+  /**
+   * Creates an empty summary, for deserialization.
+   */
+  TopWordsSummary() {
+  }
+
+  TopWordsSummary(CountMinSketch sketch, Collection<Text> candidates) {
+    this.sketch = sketch;
+    this.candidates = new ArrayList<Text>(candidates);
+  }
+
+  CountMinSketch getSketch() {
+    return sketch;
+  }
+
+  List<Text> getCandidates() {
+    return candidates;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    sketch.write(out);
+    out.writeInt(candidates.size());
+    for (Text candidate : candidates) {
+      candidate.write(out);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    sketch.readFields(in);
+    int numCandidates = in.readInt();
+    candidates = new ArrayList<Text>(numCandidates);
+    for (int i = 0; i < numCandidates; i++) {
+      Text candidate = new Text();
+      candidate.readFields(in);
+      candidates.add(candidate);
+    }
+  }
+}
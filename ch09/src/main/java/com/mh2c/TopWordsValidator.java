@@ -0,0 +1,138 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Compares the output of {@link WikipediaTopWordsDriver} with exact counts
+ * from {@link WikipediaWordCountDriver} run over the same input, printing
+ * the error for each word and the fraction of the true top K words found.
+ */
+public class TopWordsValidator extends Configured implements Tool {
+
+  private static class WordCount implements Comparable<WordCount> {
+    private final String word;
+    private final long count;
+
+    WordCount(String word, long count) {
+      this.word = word;
+      this.count = count;
+    }
+
+    @Override
+    public int compareTo(WordCount other) {
+      return Long.compare(count, other.count);
+    }
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    if (args.length != 2) {
+      System.err.println("Expected arguments: top words output directory, " +
+                         "word count output directory");
+      return 1;
+    }
+
+    // Load the approximate top words, in order
+    Map<String, Long> estimates = new LinkedHashMap<String, Long>();
+    forEachLine(new Path(args[0]), line -> {
+      int lowerBoundTab = line.lastIndexOf('\t');
+      int estimateTab = line.lastIndexOf('\t', lowerBoundTab - 1);
+      estimates.put(line.substring(0, estimateTab),
+                    Long.parseLong(line.substring(estimateTab + 1, lowerBoundTab)));
+    });
+    int k = estimates.size();
+
+    // Scan the exact counts, keeping those for the approximate top words and
+    // finding the exact top words
+    Map<String, Long> exact = new HashMap<String, Long>();
+    PriorityQueue<WordCount> exactTop = new PriorityQueue<WordCount>();
+    forEachLine(new Path(args[1]), line -> {
+      int tab = line.lastIndexOf('\t');
+      String word = line.substring(0, tab);
+      long count = Long.parseLong(line.substring(tab + 1));
+      if (estimates.containsKey(word)) {
+        exact.put(word, count);
+      }
+      exactTop.add(new WordCount(word, count));
+      if (exactTop.size() > k) {
+        exactTop.poll();
+      }
+    });
+
+    System.out.printf("%-20s %12s %12s %10s\n", "word", "estimate", "exact", "error");
+    double maxRelativeError = 0.0;
+    for (Map.Entry<String, Long> entry : estimates.entrySet()) {
+      Long count = exact.get(entry.getKey());
+      long exactCount = count == null ? 0L : count;
+      double relativeError = exactCount == 0L ? Double.POSITIVE_INFINITY :
+        (double) (entry.getValue() - exactCount) / exactCount;
+      maxRelativeError = Math.max(maxRelativeError, relativeError);
+      System.out.printf("%-20s %12d %12d %9.4f%%\n", entry.getKey(), entry.getValue(),
+                        exactCount, 100.0 * relativeError);
+    }
+
+    int found = 0;
+    for (WordCount wordCount : exactTop) {
+      if (estimates.containsKey(wordCount.word)) {
+        found++;
+      }
+    }
+    System.out.printf("Recall of top %d: %.3f, maximum relative error: %.4f%%\n", k,
+                      k == 0 ? 1.0 : (double) found / k, 100.0 * maxRelativeError);
+    return 0;
+  }
+
+  /**
+   * Passes each line of each part file in a job output directory to a
+   * consumer.
+   */
+  private void forEachLine(Path dir, Consumer<String> consumer) throws IOException {
+    FileSystem fs = dir.getFileSystem(getConf());
+    for (FileStatus part : fs.globStatus(new Path(dir, "part-*"))) {
+      try (BufferedReader reader =
+           new BufferedReader(new InputStreamReader(fs.open(part.getPath()),
+                                                    StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          consumer.accept(line);
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int exitCode = ToolRunner.run(new TopWordsValidator(), args);
+    System.exit(exitCode);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.mapred.lib.MultipleOutputs;
+
+/**
+ * Mapper that passes article titles and text through unchanged, while also
+ * writing them to sequence files alongside the job output, as the
+ * {@link WikipediaDumpLoaderDriver} would. Use {@link #addNamedOutput} to
+ * declare the side output in the job.
+ *
+ * Each mapper instance writes its own files, named
+ * "{@value #NAMED_OUTPUT}_N-m-NNNNN", so that several instances can run in
+ * one task under {@link ThreadConfinedMapRunner}.
+ */
+public class WikipediaArticleSideOutputMapper extends MapReduceBase
+  implements Mapper<Text, Text, Text, Text> {
+
+  static final String NAMED_OUTPUT = "articles";
+
+  private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+  private MultipleOutputs multipleOutputs;
+  private String instanceName;
+
+  /**
+   * Declares the side output in a job.
+   *
+   * @param conf job configuration
+   */
+  static void addNamedOutput(JobConf conf) {
+    MultipleOutputs.addMultiNamedOutput(conf, NAMED_OUTPUT, SequenceFileOutputFormat.class,
+                                        Text.class, Text.class);
+    MultipleOutputs.setCountersEnabled(conf, true);
+  }
+
+  @Override
+  public void configure(JobConf conf) {
+    multipleOutputs = new MultipleOutputs(conf);
+    instanceName = Integer.toString(INSTANCES.getAndIncrement());
+  }
+
+  /**
+   * key = title
+   * value = text
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public void map(Text key, Text value, OutputCollector<Text, Text> output,
+                  Reporter reporter) throws IOException {
+    multipleOutputs.getCollector(NAMED_OUTPUT, instanceName, reporter).collect(key, value);
+    output.collect(key, value);
+  }
+
+  @Override
+  public void close() throws IOException {
+    multipleOutputs.close();
+  }
+}
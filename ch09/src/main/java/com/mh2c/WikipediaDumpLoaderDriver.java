@@ -18,47 +18,67 @@ package com.mh2c;
 
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.Counters;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RunningJob;
 import org.apache.hadoop.mapred.SequenceFileOutputFormat;
-import org.apache.hadoop.streaming.StreamInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormatCounter;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
 /**
  * Reads a Wikipedia XML dump file and extracts each article's text into
  * sequence files.
+ *
+ * When {@value #COMPRESS_PROPERTY} is true, the sequence files are block
+ * compressed with the codec named by {@value Codecs#CODEC_PROPERTY}.
  */
 public class WikipediaDumpLoaderDriver extends Configured implements Tool {
 
+  static final String COMPRESS_PROPERTY = "mh2c.loader.compress";
+
   @Override
   public int run(String[] args) throws Exception {
     // arg checks
 
-    JobConf conf = new JobConf(getClass());
+    JobConf conf = new JobConf(getConf(), getClass());
     conf.setJobName("WP dump loader");
 
     // Set the mapper class, but skip the reduce phase
     conf.setMapperClass(WikipediaDumpLoaderMapper.class);
     conf.setNumReduceTasks(0);
+    // Optionally run several mappers per task
+    ThreadConfinedMapRunner.configureJob(conf);
     // The object key/value pairs are text
     conf.setOutputKeyClass(Text.class);
     conf.setOutputValueClass(Text.class);
 
-    // Stream XML into the job
-    conf.setInputFormat(StreamInputFormat.class);
-    StreamInputFormat.addInputPath(conf, new Path(args[0]));
-    // Use the XML record reader, with each page as one record
-    conf.set("stream.recordreader.class",
-             "org.apache.hadoop.streaming.StreamXmlRecordReader");
-    conf.set("stream.recordreader.begin", "<page>");
-    conf.set("stream.recordreader.end", "</page>");
+    // Read XML into the job, with each page as one record; bzip2 dumps are
+    // split on compressed block boundaries
+    conf.setInputFormat(WikipediaPageInputFormat.class);
+    WikipediaPageInputFormat.addInputPath(conf, new Path(args[0]));
     // Emit sequence files
     conf.setOutputFormat(SequenceFileOutputFormat.class);
     SequenceFileOutputFormat.setOutputPath(conf, new Path(args[1]));
+    boolean compress = conf.getBoolean(COMPRESS_PROPERTY, false);
+    if (compress) {
+      SequenceFileOutputFormat.setCompressOutput(conf, true);
+      SequenceFileOutputFormat.setOutputCompressionType(conf, CompressionType.BLOCK);
+      SequenceFileOutputFormat.setOutputCompressorClass(conf, Codecs.getCodecClass(conf));
+    }
 
-    JobClient.runJob(conf);
+    RunningJob job = JobClient.runJob(conf);
+    if (compress) {
+      // Article bytes leave out sequence file overhead, so this slightly
+      // understates the savings
+      Counters counters = job.getCounters();
+      Codecs.printSavings("Article output",
+                          counters.getCounter(WikipediaDumpLoaderMapper.Counter.ARTICLE_BYTES),
+                          counters.getCounter(FileOutputFormatCounter.BYTES_WRITTEN));
+    }
     return 0;
   }
 
@@ -17,11 +17,6 @@ limitations under the License.
 package com.mh2c;
 
 import java.io.IOException;
-import java.io.StringReader;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobConf;
@@ -29,28 +24,27 @@ import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.MapReduceBase;
 import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reporter;
-import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 /**
  * Mapper that parses the XML for a Wikipedia article and emits the article's
- * title and text content.
+ * title and text content. The parser is chosen with the
+ * {@value WikipediaPageParser#PARSER_PROPERTY} job property: "stax" (the
+ * default) streams through the page bytes, while "dom" builds a full DOM tree
+ * for each page.
  */
 public class WikipediaDumpLoaderMapper extends MapReduceBase
   implements Mapper<Text, Text, Text, Text> {
 
-  private enum Counter { ARTICLES }
+  enum Counter { ARTICLES, ARTICLE_BYTES }
 
-  private DocumentBuilder db;
+  private WikipediaPageParser parser;
+  private Text titleText = new Text();
+  private Text textText = new Text();
 
   @Override
   public void configure(JobConf conf) {
-    try {
-      db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-    } catch (ParserConfigurationException e) {
-      throw new IllegalStateException("XML parser configuration is bad", e);
-    }
+    parser = WikipediaPageParser.create(conf.get(WikipediaPageParser.PARSER_PROPERTY,
+                                                 WikipediaPageParser.DEFAULT_PARSER));
   }
 
   /**
@@ -60,19 +54,15 @@ public class WikipediaDumpLoaderMapper extends MapReduceBase
   @Override
   public void map(Text key, Text value, OutputCollector<Text, Text> output,
                   Reporter reporter) throws IOException {
-    try {
-      // Parse the page of XML into a document
-      Document doc = db.parse(new InputSource(new StringReader(key.toString())));
-
-      // Extract the title and text (article content) from the page content
-      String title = doc.getElementsByTagName("title").item(0).getTextContent();
-      String text = doc.getElementsByTagName("text").item(0).getTextContent();
+    // Extract the title and text (article content) from the page content
+    parser.parse(key);
 
-      // Emit the title and text pair
-      output.collect(new Text(title), new Text(text));
-      reporter.getCounter(Counter.ARTICLES).increment(1L);
-    } catch (SAXException e) {
-      throw new IOException(e);
-    }
+    // Emit the title and text pair
+    titleText.set(parser.getTitle());
+    textText.set(parser.getText());
+    output.collect(titleText, textText);
+    reporter.getCounter(Counter.ARTICLES).increment(1L);
+    reporter.getCounter(Counter.ARTICLE_BYTES)
+      .increment(titleText.getLength() + textText.getLength());
   }
 }
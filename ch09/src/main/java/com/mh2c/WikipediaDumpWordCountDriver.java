@@ -0,0 +1,108 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.ChainMapper;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Reads a Wikipedia XML dump file and counts words in its articles in a
+ * single job. Each map task chains {@link WikipediaDumpLoaderMapper} into
+ * {@link WikipediaWordCountMapper}, so article text goes straight into the
+ * word count shuffle instead of being written to sequence files and read
+ * back by a second job. Job properties for the parser, tokenizer, in-mapper
+ * combining and map output compression work as they do for the separate
+ * jobs.
+ *
+ * When {@value #ARTICLES_PROPERTY} is true, the article titles and text are
+ * also written to sequence files in the output directory, as
+ * {@link WikipediaArticleSideOutputMapper} describes.
+ */
+public class WikipediaDumpWordCountDriver extends Configured implements Tool {
+
+  static final String ARTICLES_PROPERTY = "mh2c.dumpwordcount.articles";
+
+  @Override
+  public int run(String[] args) throws Exception {
+    // arg checks
+
+    JobConf conf = new JobConf(getConf(), getClass());
+    conf.setJobName("WP dump word count");
+
+    // Chain the mappers: extract articles from pages, optionally save them
+    // on the side, then count words. Each mapper finishes with a record
+    // before the next one sees it, so records are passed by reference.
+    ChainMapper.addMapper(conf, WikipediaDumpLoaderMapper.class, Text.class, Text.class,
+                          Text.class, Text.class, false, new JobConf(false));
+    if (conf.getBoolean(ARTICLES_PROPERTY, false)) {
+      ChainMapper.addMapper(conf, WikipediaArticleSideOutputMapper.class, Text.class,
+                            Text.class, Text.class, Text.class, false, new JobConf(false));
+      WikipediaArticleSideOutputMapper.addNamedOutput(conf);
+    }
+    ChainMapper.addMapper(conf, WikipediaWordCountMapper.class, Text.class, Text.class,
+                          Text.class, IntWritable.class, false, new JobConf(false));
+    // Set the reducer class, and use it as a combiner
+    conf.setReducerClass(WikipediaWordCountReducer.class);
+    conf.setCombinerClass(WikipediaWordCountReducer.class);
+    // Optionally run several mapper chains per task
+    ThreadConfinedMapRunner.configureJob(conf);
+    // The object key/value pairs are text words and integer counts
+    conf.setOutputKeyClass(Text.class);
+    conf.setOutputValueClass(IntWritable.class);
+
+    // Read XML into the job, with each page as one record
+    conf.setInputFormat(WikipediaPageInputFormat.class);
+    WikipediaPageInputFormat.addInputPath(conf, new Path(args[0]));
+    // Emit ordinary text files
+    conf.setOutputFormat(TextOutputFormat.class);
+    TextOutputFormat.setOutputPath(conf, new Path(args[1]));
+    // Optionally compress data sent through the shuffle
+    boolean compress = conf.getBoolean(WikipediaWordCountDriver.COMPRESS_MAP_OUTPUT_PROPERTY,
+                                       false);
+    if (compress) {
+      conf.setCompressMapOutput(true);
+      conf.setMapOutputCompressorClass(Codecs.getCodecClass(conf));
+    }
+
+    RunningJob job = JobClient.runJob(conf);
+    if (compress) {
+      // Map output bytes are counted before the combiner runs, and
+      // materialized bytes after it, so this is the combiner's savings as well
+      // as the codec's; run without compression to tell them apart
+      Counters counters = job.getCounters();
+      Codecs.printReduction("Map output", "combining and compression",
+                            counters.getCounter(TaskCounter.MAP_OUTPUT_BYTES),
+                            counters.getCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES));
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int exitCode = ToolRunner.run(new WikipediaDumpWordCountDriver(), args);
+    System.exit(exitCode);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.JobConfigurable;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Input format for Wikipedia XML dump files that emits each page as one
+ * record. Uncompressed dumps and dumps compressed with a splittable codec,
+ * like bzip2, are split so that each page is read by exactly one task.
+ *
+ * key = page XML, from &lt;page&gt; to &lt;/page&gt; inclusive
+ * value = empty
+ */
+public class WikipediaPageInputFormat extends FileInputFormat<Text, Text>
+  implements JobConfigurable {
+
+  private CompressionCodecFactory compressionCodecs;
+
+  @Override
+  public void configure(JobConf conf) {
+    compressionCodecs = new CompressionCodecFactory(conf);
+  }
+
+  @Override
+  protected boolean isSplitable(FileSystem fs, Path file) {
+    CompressionCodec codec = compressionCodecs.getCodec(file);
+    return codec == null || codec instanceof SplittableCompressionCodec;
+  }
+
+  @Override
+  public RecordReader<Text, Text> getRecordReader(InputSplit split, JobConf job,
+                                                  Reporter reporter) throws IOException {
+    reporter.setStatus(split.toString());
+    return new WikipediaPageRecordReader(job, (FileSplit) split);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.hadoop.io.Text;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Extracts the title and text (article content) from the XML for a single
+ * Wikipedia page. A parser is not thread-safe; use one per mapper.
+ */
+abstract class WikipediaPageParser {
+
+  /**
+   * Job property naming the parser type to use.
+   */
+  static final String PARSER_PROPERTY = "mh2c.wikipedia.parser";
+  static final String DOM = "dom";
+  static final String STAX = "stax";
+  static final String DEFAULT_PARSER = STAX;
+
+  /**
+   * Creates a new parser.
+   *
+   * @param type parser type, either {@link #DOM} or {@link #STAX}
+   * @return parser
+   * @throws IllegalArgumentException if the type is unknown
+   */
+  static WikipediaPageParser create(String type) {
+    if (DOM.equals(type)) {
+      return new Dom();
+    }
+    if (STAX.equals(type)) {
+      return new Stax();
+    }
+    throw new IllegalArgumentException("Unknown page parser type " + type);
+  }
+
+  private String title;
+  private String text;
+
+  /**
+   * Parses the XML for a page. After this returns, the title and text are
+   * available from {@link #getTitle()} and {@link #getText()}.
+   *
+   * @param page page XML, encoded in UTF-8
+   * @throws IOException if the page cannot be parsed
+   */
+  void parse(Text page) throws IOException {
+    title = null;
+    text = null;
+    doParse(page);
+  }
+
+  protected abstract void doParse(Text page) throws IOException;
+
+  protected void setTitle(String title) {
+    this.title = title;
+  }
+
+  protected void setText(String text) {
+    this.text = text;
+  }
+
+  String getTitle() {
+    return title;
+  }
+
+  String getText() {
+    return text;
+  }
+
+  /**
+   * Parser that builds a complete DOM tree for the page.
+   */
+  static class Dom extends WikipediaPageParser {
+
+    private final DocumentBuilder db;
+
+    Dom() {
+      try {
+        db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      } catch (ParserConfigurationException e) {
+        throw new IllegalStateException("XML parser configuration is bad", e);
+      }
+    }
+
+    @Override
+    protected void doParse(Text page) throws IOException {
+      try {
+        // Parse the page of XML into a document
+        Document doc = db.parse(new InputSource(new ByteArrayInputStream(page.getBytes(), 0,
+                                                                         page.getLength())));
+
+        setTitle(doc.getElementsByTagName("title").item(0).getTextContent());
+        setText(doc.getElementsByTagName("text").item(0).getTextContent());
+      } catch (SAXException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  /**
+   * Parser that pulls events from the page bytes and only materializes the
+   * title and text. Parsing stops as soon as both have been found.
+   */
+  static class Stax extends WikipediaPageParser {
+
+    private final XMLInputFactory factory;
+
+    Stax() {
+      factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    @Override
+    protected void doParse(Text page) throws IOException {
+      XMLStreamReader reader = null;
+      try {
+        reader = factory.createXMLStreamReader(
+          new ByteArrayInputStream(page.getBytes(), 0, page.getLength()), "UTF-8");
+        while (reader.hasNext() && (getTitle() == null || getText() == null)) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          String name = reader.getLocalName();
+          if (getTitle() == null && "title".equals(name)) {
+            setTitle(reader.getElementText());
+          } else if (getText() == null && "text".equals(name)) {
+            setText(reader.getElementText());
+          }
+        }
+      } catch (XMLStreamException e) {
+        throw new IOException(e);
+      } finally {
+        if (reader != null) {
+          try {
+            reader.close();
+          } catch (XMLStreamException e) {
+            // nothing left to release
+          }
+        }
+      }
+
+      if (getTitle() == null || getText() == null) {
+        throw new IOException("Page is missing its title or text");
+      }
+    }
+  }
+}
@@ -0,0 +1,250 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.RecordReader;
+
+/**
+ * Record reader that scans the bytes of a Wikipedia XML dump for
+ * &lt;page&gt; elements. A page belongs to the split in which its start tag
+ * begins; for bzip2 input, that is decided at compressed block granularity,
+ * the same way Hadoop's line record reader does it.
+ */
+class WikipediaPageRecordReader implements RecordReader<Text, Text> {
+
+  private static final byte[] PAGE_START = "<page>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] PAGE_END = "</page>".getBytes(StandardCharsets.UTF_8);
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private long start;
+  private long end;
+  private final boolean compressed;
+  private final FSDataInputStream fileIn;
+  private final InputStream in;
+  private final Seekable filePosition;
+  private Decompressor decompressor;
+
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int bufferLength;
+  private int bufferIndex;
+  // Uncompressed: file offset of buffer[0]. Compressed: stream position
+  // reported when the buffer was filled.
+  private long bufferPos;
+  // Split compressed: position reported for the block the split starts at
+  private long firstBlockPos = -1L;
+  private boolean done;
+
+  WikipediaPageRecordReader(Configuration conf, FileSplit split) throws IOException {
+    start = split.getStart();
+    end = start + split.getLength();
+    Path file = split.getPath();
+    CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+    FileSystem fs = file.getFileSystem(conf);
+    fileIn = fs.open(file);
+
+    compressed = codec != null;
+    if (!compressed) {
+      fileIn.seek(start);
+      in = fileIn;
+      filePosition = fileIn;
+    } else {
+      decompressor = CodecPool.getDecompressor(codec);
+      if (codec instanceof SplittableCompressionCodec) {
+        SplitCompressionInputStream cIn = ((SplittableCompressionCodec) codec)
+          .createInputStream(fileIn, decompressor, start, end,
+                             SplittableCompressionCodec.READ_MODE.BYBLOCK);
+        start = cIn.getAdjustedStart();
+        end = cIn.getAdjustedEnd();
+        firstBlockPos = cIn.getPos();
+        in = cIn;
+        filePosition = cIn;
+      } else {
+        // The whole file is one split
+        in = codec.createInputStream(fileIn, decompressor);
+        filePosition = fileIn;
+        end = Long.MAX_VALUE;
+      }
+    }
+    bufferPos = start;
+  }
+
+  @Override
+  public Text createKey() {
+    return new Text();
+  }
+
+  @Override
+  public Text createValue() {
+    return new Text();
+  }
+
+  @Override
+  public boolean next(Text key, Text value) throws IOException {
+    if (done || !findPageStart()) {
+      done = true;
+      return false;
+    }
+
+    key.clear();
+    key.append(PAGE_START, 0, PAGE_START.length);
+    if (!readPageBody(key)) {
+      // Truncated page at the end of the input
+      done = true;
+      return false;
+    }
+    value.clear();
+    return true;
+  }
+
+  /**
+   * Advances past the next page start tag that belongs to this split.
+   *
+   * @return true if a start tag was found
+   */
+  private boolean findPageStart() throws IOException {
+    int matched = 0;
+    while (true) {
+      if (bufferIndex == bufferLength && !fill()) {
+        return false;
+      }
+      byte b = buffer[bufferIndex];
+      if (b == PAGE_START[matched]) {
+        if (matched == 0 && !isInSplit(positionOf(bufferIndex))) {
+          return false;
+        }
+        matched++;
+      } else if (b == PAGE_START[0]) {
+        if (!isInSplit(positionOf(bufferIndex))) {
+          return false;
+        }
+        matched = 1;
+      } else {
+        matched = 0;
+      }
+      bufferIndex++;
+      if (matched == PAGE_START.length) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Appends bytes to the key up to and including the next page end tag.
+   *
+   * @return true if the end tag was found
+   */
+  private boolean readPageBody(Text key) throws IOException {
+    int matched = 0;
+    while (true) {
+      if (bufferIndex == bufferLength && !fill()) {
+        return false;
+      }
+      int runStart = bufferIndex;
+      while (bufferIndex < bufferLength) {
+        byte b = buffer[bufferIndex++];
+        if (b == PAGE_END[matched]) {
+          matched++;
+          if (matched == PAGE_END.length) {
+            key.append(buffer, runStart, bufferIndex - runStart);
+            return true;
+          }
+        } else {
+          matched = (b == PAGE_END[0]) ? 1 : 0;
+        }
+      }
+      key.append(buffer, runStart, bufferIndex - runStart);
+    }
+  }
+
+  private boolean fill() throws IOException {
+    if (!compressed) {
+      bufferPos += bufferLength;
+    }
+    int n;
+    do {
+      n = in.read(buffer, 0, buffer.length);
+    } while (n == 0);
+    if (compressed) {
+      bufferPos = blockPosition(filePosition.getPos());
+    }
+    bufferIndex = 0;
+    bufferLength = Math.max(n, 0);
+    return n > 0;
+  }
+
+  /**
+   * Gets the position of the block being read from the one the stream
+   * reports, as one byte past the end of the block's marker. The stream
+   * reports the block that a split starts at that way, but each later block
+   * one byte further on.
+   */
+  private long blockPosition(long reported) {
+    return firstBlockPos < 0L || reported == firstBlockPos ? reported : reported - 1L;
+  }
+
+  private long positionOf(int index) {
+    return compressed ? bufferPos : bufferPos + index;
+  }
+
+  private boolean isInSplit(long position) {
+    // A compressed block belongs to the split holding the end of its
+    // marker, where the stream for the next split would start it
+    return compressed ? position <= end : position < end;
+  }
+
+  @Override
+  public long getPos() throws IOException {
+    return compressed ? filePosition.getPos() : positionOf(bufferIndex);
+  }
+
+  @Override
+  public float getProgress() throws IOException {
+    if (start == end) {
+      return 0.0f;
+    }
+    return Math.min(1.0f, (getPos() - start) / (float) (end - start));
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      in.close();
+    } finally {
+      if (decompressor != null) {
+        CodecPool.returnDecompressor(decompressor);
+        decompressor = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Reads sequence files of Wikipedia text and finds the most frequent words
+ * in them, approximately, using Count-Min Sketches. Use
+ * {@link TopWordsValidator} to compare the results with those from
+ * {@link WikipediaWordCountDriver}.
+ */
+public class WikipediaTopWordsDriver extends Configured implements Tool {
+
+  @Override
+  public int run(String[] args) throws Exception {
+    // arg checks
+
+    JobConf conf = new JobConf(getConf(), getClass());
+    conf.setJobName("WP top words");
+
+    // Set the mapper and reducer classes; one reducer merges all summaries
+    conf.setMapperClass(WikipediaTopWordsMapper.class);
+    conf.setReducerClass(WikipediaTopWordsReducer.class);
+    conf.setNumReduceTasks(1);
+    // Optionally run several mappers per task
+    ThreadConfinedMapRunner.configureJob(conf);
+    // Mappers emit summaries, and the reducer emits words and counts as text
+    conf.setMapOutputKeyClass(NullWritable.class);
+    conf.setMapOutputValueClass(TopWordsSummary.class);
+    conf.setOutputKeyClass(Text.class);
+    conf.setOutputValueClass(Text.class);
+
+    // Read in sequence files
+    conf.setInputFormat(SequenceFileInputFormat.class);
+    SequenceFileInputFormat.addInputPath(conf, new Path(args[0]));
+    // Emit ordinary text files
+    conf.setOutputFormat(TextOutputFormat.class);
+    TextOutputFormat.setOutputPath(conf, new Path(args[1]));
+
+    JobClient.runJob(conf);
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int exitCode = ToolRunner.run(new WikipediaTopWordsDriver(), args);
+    System.exit(exitCode);
+  }
+}
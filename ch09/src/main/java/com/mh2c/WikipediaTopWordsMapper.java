@@ -0,0 +1,158 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Mapper that takes in Wikipedia article text and summarizes the
+ * frequencies of the words in it with a Count-Min Sketch, tracking the
+ * words that may be among the most frequent. It emits a single summary when
+ * the task finishes, so its output size does not depend on the vocabulary.
+ *
+ * The sketch is sized by {@value #EPSILON_PROPERTY} and
+ * {@value #DELTA_PROPERTY}, unless {@value #DEPTH_PROPERTY} and
+ * {@value #WIDTH_PROPERTY} give its dimensions directly. Up to
+ * {@value #CANDIDATES_PROPERTY} candidate words are kept, ten times
+ * {@value #K_PROPERTY} by default.
+ */
+public class WikipediaTopWordsMapper extends MapReduceBase
+  implements Mapper<Text, Text, NullWritable, TopWordsSummary> {
+
+  static final String K_PROPERTY = "mh2c.topwords.k";
+  static final String EPSILON_PROPERTY = "mh2c.topwords.epsilon";
+  static final String DELTA_PROPERTY = "mh2c.topwords.delta";
+  static final String DEPTH_PROPERTY = "mh2c.topwords.depth";
+  static final String WIDTH_PROPERTY = "mh2c.topwords.width";
+  static final String CANDIDATES_PROPERTY = "mh2c.topwords.candidates";
+  static final int DEFAULT_K = 100;
+  static final double DEFAULT_EPSILON = 0.0001;
+  static final double DEFAULT_DELTA = 0.01;
+
+  private WordTokenizer tokenizer;
+  private CountMinSketch sketch;
+  private int maxCandidates;
+  private Set<Text> candidates = new HashSet<Text>();
+  // Words must have a higher estimate than this to become candidates
+  private long threshold;
+  private Text lookupText = new Text();
+  private OutputCollector<NullWritable, TopWordsSummary> output;
+
+  @Override
+  public void configure(JobConf conf) {
+    tokenizer = WordTokenizer.create(conf.get(WordTokenizer.TOKENIZER_PROPERTY,
+                                              WordTokenizer.DEFAULT_TOKENIZER));
+    int depth = conf.getInt(DEPTH_PROPERTY, 0);
+    int width = conf.getInt(WIDTH_PROPERTY, 0);
+    if (depth > 0 && width > 0) {
+      sketch = new CountMinSketch(depth, width);
+    } else {
+      sketch = CountMinSketch.forErrorBounds(conf.getDouble(EPSILON_PROPERTY, DEFAULT_EPSILON),
+                                             conf.getDouble(DELTA_PROPERTY, DEFAULT_DELTA));
+    }
+    maxCandidates = conf.getInt(CANDIDATES_PROPERTY, 10 * conf.getInt(K_PROPERTY, DEFAULT_K));
+  }
+
+  /**
+   * key = title
+   * value = text
+   */
+  @Override
+  public void map(Text key, Text value, OutputCollector<NullWritable, TopWordsSummary> output,
+                  Reporter reporter) throws IOException {
+    // Hold on to the collector so that close() can emit the summary
+    this.output = output;
+
+    tokenizer.reset(value);
+    while (tokenizer.next()) {
+      byte[] bytes = tokenizer.wordBytes();
+      int start = tokenizer.wordStart();
+      int length = tokenizer.wordLength();
+      long estimate = sketch.add(bytes, start, length, 1L);
+      if (estimate > threshold) {
+        lookupText.set(bytes, start, length);
+        if (!candidates.contains(lookupText)) {
+          candidates.add(new Text(lookupText));
+          // Let the candidates grow past the limit before pruning, so that
+          // pruning is infrequent
+          if (candidates.size() >= 2 * maxCandidates) {
+            prune();
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (output != null) {
+      prune();
+      output.collect(NullWritable.get(), new TopWordsSummary(sketch, candidates));
+    }
+  }
+
+  /**
+   * Keeps only the candidates with the highest estimates, and raises the
+   * threshold to the lowest estimate kept.
+   */
+  private void prune() {
+    if (candidates.size() <= maxCandidates) {
+      return;
+    }
+    List<Text> sorted = sortByEstimate(sketch, candidates);
+    candidates = new HashSet<Text>(sorted.subList(0, maxCandidates));
+    Text last = sorted.get(maxCandidates - 1);
+    threshold = sketch.estimate(last.getBytes(), 0, last.getLength());
+  }
+
+  /**
+   * Sorts words by their estimated counts, highest first.
+   *
+   * @param sketch sketch to estimate from
+   * @param words words to sort
+   * @return sorted list of words
+   */
+  static List<Text> sortByEstimate(final CountMinSketch sketch, Set<Text> words) {
+    List<Text> sorted = new ArrayList<Text>(words);
+    Collections.sort(sorted, new Comparator<Text>() {
+      @Override
+      public int compare(Text t1, Text t2) {
+        long e1 = sketch.estimate(t1.getBytes(), 0, t1.getLength());
+        long e2 = sketch.estimate(t2.getBytes(), 0, t2.getLength());
+        if (e1 != e2) {
+          return e1 > e2 ? -1 : 1;
+        }
+        return t1.compareTo(t2);
+      }
+    });
+    return sorted;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Reducer that merges word frequency summaries and emits the top K words.
+ * Each output value holds the estimated count and a lower bound on the true
+ * count, separated by a tab; the lower bound holds with probability
+ * 1 - delta.
+ */
+public class WikipediaTopWordsReducer extends MapReduceBase
+  implements Reducer<NullWritable, TopWordsSummary, Text, Text> {
+
+  private int k;
+  private Text valueText = new Text();
+
+  @Override
+  public void configure(JobConf conf) {
+    k = conf.getInt(WikipediaTopWordsMapper.K_PROPERTY, WikipediaTopWordsMapper.DEFAULT_K);
+  }
+
+  /**
+   * key = nothing
+   * values = summaries from each map task
+   */
+  @Override
+  public void reduce(NullWritable key, Iterator<TopWordsSummary> values,
+                     OutputCollector<Text, Text> output, Reporter reporter)
+    throws IOException {
+
+    // Merge the sketches, and gather all of the candidate words
+    CountMinSketch merged = null;
+    Set<Text> candidates = new HashSet<Text>();
+    while (values.hasNext()) {
+      TopWordsSummary summary = values.next();
+      CountMinSketch sketch = summary.getSketch();
+      if (merged == null) {
+        merged = new CountMinSketch(sketch.getDepth(), sketch.getWidth());
+      }
+      merged.merge(sketch);
+      candidates.addAll(summary.getCandidates());
+    }
+    if (merged == null) {
+      return;
+    }
+
+    // Emit the candidates with the highest merged estimates
+    long errorBound = merged.getErrorBound();
+    List<Text> sorted = WikipediaTopWordsMapper.sortByEstimate(merged, candidates);
+    for (Text word : sorted.subList(0, Math.min(k, sorted.size()))) {
+      long estimate = merged.estimate(word.getBytes(), 0, word.getLength());
+      valueText.set(estimate + "\t" + Math.max(0L, estimate - errorBound));
+      output.collect(word, valueText);
+    }
+  }
+}
@@ -17,44 +17,105 @@ limitations under the License.
 package com.mh2c;
 
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.Counters;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RunningJob;
 import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.CombineSequenceFileInputFormat;
+import org.apache.hadoop.mapred.lib.TotalOrderPartitioner;
+import org.apache.hadoop.mapreduce.TaskCounter;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
 /**
  * Reads sequence files of Wikipedia text and counts words in them.
+ *
+ * When {@value #COMBINE_SPLITS_PROPERTY} is true, many small sequence files
+ * are packed into each split, up to {@value #SPLIT_MAXSIZE_PROPERTY} bytes.
+ * When {@value #COMPRESS_MAP_OUTPUT_PROPERTY} is true, intermediate map
+ * output is compressed with the codec named by
+ * {@value Codecs#CODEC_PROPERTY}.
+ *
+ * When {@value #TOTAL_ORDER_PROPERTY} is true, words are sampled from the
+ * input to range-partition them across reducers, so that the reducer outputs
+ * together are globally sorted. Very frequent words get partitions of their
+ * own. The job may use fewer reducers than requested if the sample does not
+ * support that many partitions.
  */
 public class WikipediaWordCountDriver extends Configured implements Tool {
 
+  static final String COMBINE_SPLITS_PROPERTY = "mh2c.wordcount.combine.splits";
+  static final String SPLIT_MAXSIZE_PROPERTY = "mapreduce.input.fileinputformat.split.maxsize";
+  static final long DEFAULT_COMBINED_SPLIT_MAXSIZE = 256L * 1024L * 1024L;
+  static final String COMPRESS_MAP_OUTPUT_PROPERTY = "mh2c.wordcount.compress.map.output";
+  static final String TOTAL_ORDER_PROPERTY = "mh2c.wordcount.total.order";
+
   @Override
   public int run(String[] args) throws Exception {
     // arg checks
 
-    JobConf conf = new JobConf(getClass());
+    JobConf conf = new JobConf(getConf(), getClass());
     conf.setJobName("WP word count");
 
     // Set the mapper and reducer classes, and use the reducer as a combiner
     conf.setMapperClass(WikipediaWordCountMapper.class);
     conf.setReducerClass(WikipediaWordCountReducer.class);
     conf.setCombinerClass(WikipediaWordCountReducer.class);
+    // Optionally run several mappers per task
+    ThreadConfinedMapRunner.configureJob(conf);
     // The object key/value pairs are text words and integer counts
     conf.setOutputKeyClass(Text.class);
     conf.setOutputValueClass(IntWritable.class);
 
-    // Read in sequence files
-    conf.setInputFormat(SequenceFileInputFormat.class);
+    // Read in sequence files, optionally combining them into larger splits
+    if (conf.getBoolean(COMBINE_SPLITS_PROPERTY, false)) {
+      conf.setInputFormat(CombineSequenceFileInputFormat.class);
+      if (conf.get(SPLIT_MAXSIZE_PROPERTY) == null) {
+        conf.setLong(SPLIT_MAXSIZE_PROPERTY, DEFAULT_COMBINED_SPLIT_MAXSIZE);
+      }
+    } else {
+      conf.setInputFormat(SequenceFileInputFormat.class);
+    }
     SequenceFileInputFormat.addInputPath(conf, new Path(args[0]));
     // Emit ordinary text files
     conf.setOutputFormat(TextOutputFormat.class);
     TextOutputFormat.setOutputPath(conf, new Path(args[1]));
+    // Optionally compress data sent through the shuffle
+    boolean compress = conf.getBoolean(COMPRESS_MAP_OUTPUT_PROPERTY, false);
+    if (compress) {
+      conf.setCompressMapOutput(true);
+      conf.setMapOutputCompressorClass(Codecs.getCodecClass(conf));
+    }
+
+    // Optionally range-partition words using split points sampled from the
+    // input
+    if (conf.getBoolean(TOTAL_ORDER_PROPERTY, false)) {
+      Path outputPath = new Path(args[1]);
+      Path partitionFile = new Path(outputPath.getParent(),
+                                    outputPath.getName() + "_partitions");
+      int numSplitPoints = WordSampler.writePartitionFile(conf, partitionFile);
+      conf.setNumReduceTasks(numSplitPoints + 1);
+      conf.setPartitionerClass(TotalOrderPartitioner.class);
+      TotalOrderPartitioner.setPartitionFile(conf, partitionFile);
+      FileSystem.get(partitionFile.toUri(), conf).deleteOnExit(partitionFile);
+    }
 
-    JobClient.runJob(conf);
+    RunningJob job = JobClient.runJob(conf);
+    if (compress) {
+      // Map output bytes are counted before the combiner runs, and
+      // materialized bytes after it, so this is the combiner's savings as well
+      // as the codec's; run without compression to tell them apart
+      Counters counters = job.getCounters();
+      Codecs.printReduction("Map output", "combining and compression",
+                            counters.getCounter(TaskCounter.MAP_OUTPUT_BYTES),
+                            counters.getCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES));
+    }
     return 0;
   }
 
@@ -20,6 +20,7 @@ import java.io.IOException;
 
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.MapReduceBase;
 import org.apache.hadoop.mapred.OutputCollector;
@@ -27,13 +28,44 @@ import org.apache.hadoop.mapred.Reporter;
 
 /**
  * Mapper that takes in Wikipedia article text and counts the words in it.
+ * Words are found with the tokenizer named by the
+ * {@value WordTokenizer#TOKENIZER_PROPERTY} job property: "whitespace" (the
+ * default) splits on whitespace, while "unicode" picks out runs of letters
+ * and digits and lower-cases them.
+ *
+ * When {@value #IN_MAPPER_COMBINING_PROPERTY} is true, counts are aggregated
+ * within the task and only emitted when the memory allocated for them reaches
+ * {@value #IN_MAPPER_MAX_BYTES_PROPERTY} bytes, and when the task finishes.
  */
 public class WikipediaWordCountMapper extends MapReduceBase
   implements Mapper<Text, Text, Text, IntWritable> {
 
+  static final String IN_MAPPER_COMBINING_PROPERTY = "mh2c.wordcount.inmapper.enabled";
+  static final String IN_MAPPER_MAX_BYTES_PROPERTY = "mh2c.wordcount.inmapper.max.bytes";
+  static final long DEFAULT_IN_MAPPER_MAX_BYTES = 64L * 1024L * 1024L;
+
+  private enum Counter { IN_MAPPER_FLUSHES, IN_MAPPER_KEYS }
+
   private static final IntWritable ONE = new IntWritable(1);
   private Text wordText = new Text();
 
+  private WordTokenizer tokenizer;
+  private WordCountMap counts;
+  private long maxBytes;
+  private IntWritable countWritable = new IntWritable();
+  private OutputCollector<Text, IntWritable> output;
+  private Reporter reporter;
+
+  @Override
+  public void configure(JobConf conf) {
+    tokenizer = WordTokenizer.create(conf.get(WordTokenizer.TOKENIZER_PROPERTY,
+                                              WordTokenizer.DEFAULT_TOKENIZER));
+    if (conf.getBoolean(IN_MAPPER_COMBINING_PROPERTY, false)) {
+      counts = new WordCountMap();
+      maxBytes = conf.getLong(IN_MAPPER_MAX_BYTES_PROPERTY, DEFAULT_IN_MAPPER_MAX_BYTES);
+    }
+  }
+
   /**
    * key = title
    * value = text
@@ -41,12 +73,50 @@ public class WikipediaWordCountMapper extends MapReduceBase
   @Override
   public void map(Text key, Text value, OutputCollector<Text, IntWritable> output,
                   Reporter reporter) throws IOException {
-    // Split the text content of the article on whitespace
-    String[] words = value.toString().split("\\s+");
+    // Split the text content of the article into words, working directly on
+    // its bytes
+    tokenizer.reset(value);
     // Count each word occurrence
-    for (String word : words) {
-      wordText.set(word);
-      output.collect(wordText, ONE);
+    while (tokenizer.next()) {
+      if (counts == null) {
+        wordText.set(tokenizer.wordBytes(), tokenizer.wordStart(), tokenizer.wordLength());
+        output.collect(wordText, ONE);
+      } else {
+        counts.add(tokenizer.wordBytes(), tokenizer.wordStart(), tokenizer.wordLength(), 1);
+      }
+    }
+
+    if (counts != null) {
+      // Hold on to the collector so that close() can flush
+      this.output = output;
+      this.reporter = reporter;
+      if (counts.memoryUsed() >= maxBytes) {
+        flush();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (counts != null && output != null) {
+      flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    byte[] keyData = counts.keyData();
+    for (int i = 0; i < counts.size(); i++) {
+      wordText.set(keyData, counts.keyStart(i), counts.keyLength(i));
+      countWritable.set(counts.count(i));
+      output.collect(wordText, countWritable);
+    }
+    reporter.getCounter(Counter.IN_MAPPER_FLUSHES).increment(1L);
+    reporter.getCounter(Counter.IN_MAPPER_KEYS).increment(counts.size());
+    counts.clear();
+    // The map keeps its space when cleared, so let it go if it reached the
+    // ceiling, rather than flushing after every record from then on
+    if (counts.memoryUsed() >= maxBytes) {
+      counts = new WordCountMap();
     }
   }
 }
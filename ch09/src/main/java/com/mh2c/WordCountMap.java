@@ -0,0 +1,161 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * An open-addressing hash map from words, kept as raw UTF-8 bytes, to int
+ * counts. Word bytes are copied into one shared byte array, and entries are
+ * held in parallel primitive arrays, so adding a word never allocates an
+ * object. The map tracks the memory it has allocated so that callers can
+ * flush it when it grows past a ceiling.
+ */
+class WordCountMap {
+
+  private static final int INITIAL_ENTRIES = 1024;
+  // Bytes per entry across the entry arrays
+  private static final int ENTRY_BYTES = 4 * 4;
+
+  private byte[] keyData = new byte[INITIAL_ENTRIES * 8];
+  private int keyDataLength;
+
+  // Entries, in insertion order
+  private int[] keyStarts = new int[INITIAL_ENTRIES];
+  private int[] keyLengths = new int[INITIAL_ENTRIES];
+  private int[] hashes = new int[INITIAL_ENTRIES];
+  private int[] counts = new int[INITIAL_ENTRIES];
+  private int size;
+
+  // Slots hold entry index + 1, or 0 if empty; length is a power of two
+  private int[] slots = new int[INITIAL_ENTRIES * 2];
+
+  /**
+   * Adds to the count for a word.
+   *
+   * @param bytes buffer holding the word
+   * @param start start of the word in the buffer
+   * @param length length of the word in bytes
+   * @param count amount to add
+   */
+  void add(byte[] bytes, int start, int length, int count) {
+    int hash = WritableComparator.hashBytes(bytes, start, length);
+    int mask = slots.length - 1;
+    int slot = mix(hash) & mask;
+    while (slots[slot] != 0) {
+      int entry = slots[slot] - 1;
+      if (hashes[entry] == hash && keyLengths[entry] == length &&
+          WritableComparator.compareBytes(keyData, keyStarts[entry], length,
+                                          bytes, start, length) == 0) {
+        counts[entry] += count;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (size == keyStarts.length) {
+      growEntries();
+    }
+    if (keyDataLength + length > keyData.length) {
+      keyData = Arrays.copyOf(keyData, Math.max(keyData.length * 2, keyDataLength + length));
+    }
+    System.arraycopy(bytes, start, keyData, keyDataLength, length);
+    keyStarts[size] = keyDataLength;
+    keyLengths[size] = length;
+    hashes[size] = hash;
+    counts[size] = count;
+    keyDataLength += length;
+    slots[slot] = ++size;
+
+    // Keep the load factor at or below one half
+    if (size * 2 > slots.length) {
+      rehash();
+    }
+  }
+
+  /**
+   * @return number of distinct words in the map
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return number of bytes allocated by the map's arrays, which clearing
+   * the map keeps for reuse
+   */
+  long memoryUsed() {
+    return keyData.length + (long) keyStarts.length * ENTRY_BYTES + slots.length * 4L;
+  }
+
+  /**
+   * @return array holding the bytes for all words, located by
+   * {@link #keyStart(int)} and {@link #keyLength(int)}
+   */
+  byte[] keyData() {
+    return keyData;
+  }
+
+  int keyStart(int entry) {
+    return keyStarts[entry];
+  }
+
+  int keyLength(int entry) {
+    return keyLengths[entry];
+  }
+
+  int count(int entry) {
+    return counts[entry];
+  }
+
+  /**
+   * Removes all words, keeping allocated space for reuse.
+   */
+  void clear() {
+    Arrays.fill(slots, 0);
+    size = 0;
+    keyDataLength = 0;
+  }
+
+  private void growEntries() {
+    int newLength = keyStarts.length * 2;
+    keyStarts = Arrays.copyOf(keyStarts, newLength);
+    keyLengths = Arrays.copyOf(keyLengths, newLength);
+    hashes = Arrays.copyOf(hashes, newLength);
+    counts = Arrays.copyOf(counts, newLength);
+  }
+
+  private void rehash() {
+    slots = new int[slots.length * 2];
+    int mask = slots.length - 1;
+    for (int entry = 0; entry < size; entry++) {
+      int slot = mix(hashes[entry]) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = entry + 1;
+    }
+  }
+
+  // Spreads the bits of the polynomial byte hash before masking
+  private static int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,228 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.lib.InputSampler;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+
+/**
+ * Input sampler that samples the words in article text, rather than the
+ * input keys (titles), using the same tokenizer as the word count mapper.
+ * Each word occurrence is kept with probability
+ * {@value #FREQUENCY_PROPERTY}, from up to {@value #MAX_SPLITS_PROPERTY}
+ * splits, until {@value #MAX_SAMPLES_PROPERTY} words are sampled. Both the
+ * mapred and mapreduce APIs are supported.
+ */
+class WordSampler implements InputSampler.Sampler<Text, Text> {
+
+  static final String FREQUENCY_PROPERTY = "mh2c.wordcount.sample.frequency";
+  static final String MAX_SPLITS_PROPERTY = "mh2c.wordcount.sample.max.splits";
+  static final String MAX_SAMPLES_PROPERTY = "mh2c.wordcount.sample.max.samples";
+  static final String SEED_PROPERTY = "mh2c.wordcount.sample.seed";
+  static final float DEFAULT_FREQUENCY = 0.01f;
+  static final int DEFAULT_MAX_SPLITS = 10;
+  static final int DEFAULT_MAX_SAMPLES = 100000;
+  static final long DEFAULT_SEED = 0L;
+
+  @Override
+  public Text[] getSample(InputFormat<Text, Text> inf, JobConf job) throws IOException {
+    Sampling sampling = new Sampling(job);
+
+    // Spread the sampled splits evenly across the input
+    InputSplit[] splits = inf.getSplits(job, job.getNumMapTasks());
+    int splitsToSample = Math.min(sampling.maxSplits, splits.length);
+    int step = splits.length / Math.max(1, splitsToSample);
+
+    for (int i = 0; i < splitsToSample && !sampling.isFull(); i++) {
+      RecordReader<Text, Text> reader = inf.getRecordReader(splits[i * step], job, Reporter.NULL);
+      try {
+        Text key = reader.createKey();
+        Text value = reader.createValue();
+        while (!sampling.isFull() && reader.next(key, value)) {
+          sampling.sample(value);
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return sampling.getSamples();
+  }
+
+  @Override
+  public Text[] getSample(org.apache.hadoop.mapreduce.InputFormat<Text, Text> inf, Job job)
+    throws IOException, InterruptedException {
+    Sampling sampling = new Sampling(job.getConfiguration());
+
+    // Spread the sampled splits evenly across the input
+    List<org.apache.hadoop.mapreduce.InputSplit> splits = inf.getSplits(job);
+    int splitsToSample = Math.min(sampling.maxSplits, splits.size());
+    int step = splits.size() / Math.max(1, splitsToSample);
+
+    for (int i = 0; i < splitsToSample && !sampling.isFull(); i++) {
+      TaskAttemptContext context =
+        new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+      org.apache.hadoop.mapreduce.RecordReader<Text, Text> reader =
+        inf.createRecordReader(splits.get(i * step), context);
+      try {
+        reader.initialize(splits.get(i * step), context);
+        while (!sampling.isFull() && reader.nextKeyValue()) {
+          sampling.sample(reader.getCurrentValue());
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return sampling.getSamples();
+  }
+
+  /**
+   * Words sampled so far, with the settings that govern sampling. The
+   * random number generator is seeded from {@value #SEED_PROPERTY}, so that
+   * the same input always yields the same samples, and so the same
+   * partitions.
+   */
+  private static class Sampling {
+    private final float frequency;
+    private final int maxSplits;
+    private final int maxSamples;
+    private final WordTokenizer tokenizer;
+    private final Random random;
+    private final List<Text> samples = new ArrayList<Text>();
+
+    Sampling(Configuration conf) {
+      frequency = conf.getFloat(FREQUENCY_PROPERTY, DEFAULT_FREQUENCY);
+      maxSplits = conf.getInt(MAX_SPLITS_PROPERTY, DEFAULT_MAX_SPLITS);
+      maxSamples = conf.getInt(MAX_SAMPLES_PROPERTY, DEFAULT_MAX_SAMPLES);
+      tokenizer = WordTokenizer.create(conf.get(WordTokenizer.TOKENIZER_PROPERTY,
+                                                WordTokenizer.DEFAULT_TOKENIZER));
+      random = new Random(conf.getLong(SEED_PROPERTY, DEFAULT_SEED));
+    }
+
+    boolean isFull() {
+      return samples.size() >= maxSamples;
+    }
+
+    /**
+     * Samples the words in an article's text.
+     */
+    void sample(Text value) {
+      tokenizer.reset(value);
+      while (!isFull() && tokenizer.next()) {
+        if (random.nextFloat() < frequency) {
+          Text word = new Text();
+          word.set(tokenizer.wordBytes(), tokenizer.wordStart(), tokenizer.wordLength());
+          samples.add(word);
+        }
+      }
+    }
+
+    Text[] getSamples() {
+      return samples.toArray(new Text[samples.size()]);
+    }
+  }
+
+  /**
+   * Chooses split points for total order partitioning from sampled words.
+   * Split points are chosen so that each partition covers about the same
+   * number of sampled occurrences. A word that by itself has at least that
+   * many occurrences is given a partition of its own, bounded by split
+   * points at the word and at the next sampled word. There may be fewer
+   * than numPartitions - 1 split points, but never more.
+   *
+   * @param samples sampled words
+   * @param numPartitions desired number of partitions
+   * @return sorted split points
+   */
+  static List<Text> chooseSplitPoints(Text[] samples, int numPartitions) {
+    TreeMap<Text, Long> counts = new TreeMap<Text, Long>();
+    for (Text sample : samples) {
+      Long count = counts.get(sample);
+      counts.put(sample, count == null ? 1L : count + 1L);
+    }
+    double share = (double) samples.length / numPartitions;
+
+    List<Text> splitPoints = new ArrayList<Text>();
+    long accumulated = 0L;
+    boolean cut = false;
+    for (Map.Entry<Text, Long> entry : counts.entrySet()) {
+      long count = entry.getValue();
+      if (cut || (accumulated > 0L && count >= share)) {
+        if (splitPoints.size() == numPartitions - 1) {
+          break;
+        }
+        splitPoints.add(entry.getKey());
+        accumulated = 0L;
+      }
+      accumulated += count;
+      cut = accumulated >= share;
+    }
+    return splitPoints;
+  }
+
+  /**
+   * Samples the job input and writes a partition file for total order
+   * partitioning.
+   *
+   * @param job job configuration; the input format and paths must be set
+   * @param partitionFile path to write
+   * @return number of split points written, one less than the number of
+   * reducers the job should use
+   * @throws IOException if sampling or writing fails
+   */
+  @SuppressWarnings("unchecked")
+  static int writePartitionFile(JobConf job, Path partitionFile) throws IOException {
+    Text[] samples = new WordSampler().getSample((InputFormat<Text, Text>) job.getInputFormat(),
+                                                 job);
+    List<Text> splitPoints = chooseSplitPoints(samples, job.getNumReduceTasks());
+
+    FileSystem fs = partitionFile.getFileSystem(job);
+    if (fs.exists(partitionFile)) {
+      fs.delete(partitionFile, false);
+    }
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, job, partitionFile, Text.class,
+                                                           NullWritable.class);
+    try {
+      for (Text splitPoint : splitPoints) {
+        writer.append(splitPoint, NullWritable.get());
+      }
+    } finally {
+      writer.close();
+    }
+    return splitPoints.size();
+  }
+}
@@ -0,0 +1,283 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Splits the UTF-8 bytes of a {@link Text} into words without decoding it
+ * into a string. After each call to {@link #next()}, the current word is
+ * available as a range of bytes. A tokenizer is not thread-safe; use one per
+ * mapper.
+ */
+abstract class WordTokenizer {
+
+  /**
+   * Job property naming the tokenizer type to use.
+   */
+  static final String TOKENIZER_PROPERTY = "mh2c.wordcount.tokenizer";
+  static final String WHITESPACE = "whitespace";
+  static final String UNICODE = "unicode";
+  static final String DEFAULT_TOKENIZER = WHITESPACE;
+
+  /**
+   * Creates a new tokenizer.
+   *
+   * @param type tokenizer type, either {@link #WHITESPACE} or
+   * {@link #UNICODE}
+   * @return tokenizer
+   * @throws IllegalArgumentException if the type is unknown
+   */
+  static WordTokenizer create(String type) {
+    if (WHITESPACE.equals(type)) {
+      return new Whitespace();
+    }
+    if (UNICODE.equals(type)) {
+      return new Unicode();
+    }
+    throw new IllegalArgumentException("Unknown tokenizer type " + type);
+  }
+
+  protected byte[] bytes;
+  protected int limit;
+  protected int pos;
+
+  /**
+   * Starts tokenizing new text. The text must not change until tokenizing
+   * is done.
+   *
+   * @param text text to tokenize
+   */
+  void reset(Text text) {
+    bytes = text.getBytes();
+    limit = text.getLength();
+    pos = 0;
+  }
+
+  /**
+   * Advances to the next word.
+   *
+   * @return true if there is another word
+   */
+  abstract boolean next();
+
+  /**
+   * @return array holding the current word
+   */
+  abstract byte[] wordBytes();
+
+  /**
+   * @return start of the current word in {@link #wordBytes()}
+   */
+  abstract int wordStart();
+
+  /**
+   * @return length of the current word in bytes
+   */
+  abstract int wordLength();
+
+  /**
+   * Tokenizer that produces exactly the words that
+   * <code>text.toString().split("\\s+")</code> does, for valid UTF-8 text.
+   * That includes an empty first word when the text starts with whitespace,
+   * and a single empty word for empty text. The whitespace characters are
+   * all ASCII, so word bytes are never copied.
+   */
+  static class Whitespace extends WordTokenizer {
+
+    private boolean first;
+    private int wordStart;
+    private int wordLength;
+
+    @Override
+    void reset(Text text) {
+      super.reset(text);
+      first = true;
+    }
+
+    @Override
+    boolean next() {
+      if (first) {
+        first = false;
+        if (limit == 0 || isSpace(bytes[0])) {
+          // An empty leading word, unless the text is all whitespace
+          skipSpaces();
+          wordStart = 0;
+          wordLength = 0;
+          return limit == 0 || pos < limit;
+        }
+      }
+
+      skipSpaces();
+      if (pos == limit) {
+        return false;
+      }
+      wordStart = pos;
+      while (pos < limit && !isSpace(bytes[pos])) {
+        pos++;
+      }
+      wordLength = pos - wordStart;
+      return true;
+    }
+
+    private void skipSpaces() {
+      while (pos < limit && isSpace(bytes[pos])) {
+        pos++;
+      }
+    }
+
+    // Matches \s in java.util.regex
+    private static boolean isSpace(byte b) {
+      return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    @Override
+    byte[] wordBytes() {
+      return bytes;
+    }
+
+    @Override
+    int wordStart() {
+      return wordStart;
+    }
+
+    @Override
+    int wordLength() {
+      return wordLength;
+    }
+  }
+
+  /**
+   * Tokenizer that treats each maximal run of Unicode letters and digits as
+   * a word, converted to lower case. Everything else, including punctuation
+   * and invalid UTF-8, separates words. Words are written to a reusable
+   * buffer.
+   */
+  static class Unicode extends WordTokenizer {
+
+    private byte[] word = new byte[64];
+    private int wordLength;
+
+    @Override
+    boolean next() {
+      wordLength = 0;
+      while (pos < limit) {
+        int b = bytes[pos] & 0xff;
+        if (b < 0x80) {
+          pos++;
+          if ((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9')) {
+            append(b);
+          } else if (b >= 'A' && b <= 'Z') {
+            append(b | 0x20);
+          } else if (wordLength > 0) {
+            return true;
+          }
+          continue;
+        }
+
+        int codePoint = decode();
+        if (codePoint >= 0 && Character.isLetterOrDigit(codePoint)) {
+          appendCodePoint(Character.toLowerCase(codePoint));
+        } else if (wordLength > 0) {
+          return true;
+        }
+      }
+      return wordLength > 0;
+    }
+
+    /**
+     * Decodes the multi-byte UTF-8 sequence at the current position and
+     * advances past it.
+     *
+     * @return code point, or -1 if the sequence is invalid
+     */
+    private int decode() {
+      int b = bytes[pos] & 0xff;
+      int extra;
+      int codePoint;
+      if (b >= 0xC2 && b <= 0xDF) {
+        extra = 1;
+        codePoint = b & 0x1F;
+      } else if (b >= 0xE0 && b <= 0xEF) {
+        extra = 2;
+        codePoint = b & 0x0F;
+      } else if (b >= 0xF0 && b <= 0xF4) {
+        extra = 3;
+        codePoint = b & 0x07;
+      } else {
+        pos++;
+        return -1;
+      }
+      if (pos + extra >= limit) {
+        pos++;
+        return -1;
+      }
+      for (int i = 1; i <= extra; i++) {
+        int c = bytes[pos + i] & 0xff;
+        if ((c & 0xC0) != 0x80) {
+          pos++;
+          return -1;
+        }
+        codePoint = (codePoint << 6) | (c & 0x3F);
+      }
+      pos += extra + 1;
+      return codePoint;
+    }
+
+    private void append(int b) {
+      if (wordLength == word.length) {
+        word = Arrays.copyOf(word, word.length * 2);
+      }
+      word[wordLength++] = (byte) b;
+    }
+
+    private void appendCodePoint(int codePoint) {
+      if (codePoint < 0x80) {
+        append(codePoint);
+      } else if (codePoint < 0x800) {
+        append(0xC0 | (codePoint >> 6));
+        append(0x80 | (codePoint & 0x3F));
+      } else if (codePoint < 0x10000) {
+        append(0xE0 | (codePoint >> 12));
+        append(0x80 | ((codePoint >> 6) & 0x3F));
+        append(0x80 | (codePoint & 0x3F));
+      } else {
+        append(0xF0 | (codePoint >> 18));
+        append(0x80 | ((codePoint >> 12) & 0x3F));
+        append(0x80 | ((codePoint >> 6) & 0x3F));
+        append(0x80 | (codePoint & 0x3F));
+      }
+    }
+
+    @Override
+    byte[] wordBytes() {
+      return word;
+    }
+
+    @Override
+    int wordStart() {
+      return 0;
+    }
+
+    @Override
+    int wordLength() {
+      return wordLength;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+public class CountMinSketchTest {
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static long estimate(CountMinSketch sketch, String s) {
+    byte[] b = bytes(s);
+    return sketch.estimate(b, 0, b.length);
+  }
+
+  private static void add(CountMinSketch sketch, String s, long count) {
+    byte[] b = bytes(s);
+    sketch.add(b, 0, b.length, count);
+  }
+
+  @Test
+  public void testErrorBounds() {
+    CountMinSketch sketch = CountMinSketch.forErrorBounds(0.001, 0.01);
+    assertEquals(5, sketch.getDepth());
+    assertEquals(2719, sketch.getWidth());
+
+    long[] counts = new long[5000];
+    Random random = new Random(7L);
+    for (int i = 0; i < 100000; i++) {
+      int word = (int) Math.min(counts.length - 1, Math.abs(random.nextGaussian() * 500));
+      counts[word]++;
+      add(sketch, "w" + word, 1L);
+    }
+    assertEquals(100000L, sketch.getTotalCount());
+
+    long errorBound = sketch.getErrorBound();
+    int withinBound = 0;
+    for (int i = 0; i < counts.length; i++) {
+      long estimate = estimate(sketch, "w" + i);
+      assertTrue(estimate >= counts[i]);
+      if (estimate - counts[i] <= errorBound) {
+        withinBound++;
+      }
+    }
+    assertTrue(withinBound >= counts.length * 0.99);
+  }
+
+  @Test
+  public void testMerge() {
+    CountMinSketch s1 = new CountMinSketch(4, 100);
+    CountMinSketch s2 = new CountMinSketch(4, 100);
+    add(s1, "apple", 3L);
+    add(s2, "apple", 4L);
+    add(s2, "banana", 1L);
+
+    s1.merge(s2);
+    assertTrue(estimate(s1, "apple") >= 7L);
+    assertTrue(estimate(s1, "banana") >= 1L);
+    assertEquals(8L, s1.getTotalCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeDifferentDimensions() {
+    new CountMinSketch(4, 100).merge(new CountMinSketch(4, 101));
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    CountMinSketch sketch = new CountMinSketch(3, 50);
+    add(sketch, "apple", 5L);
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    sketch.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    CountMinSketch copy = new CountMinSketch();
+    copy.readFields(in);
+
+    assertEquals(3, copy.getDepth());
+    assertEquals(50, copy.getWidth());
+    assertEquals(5L, copy.getTotalCount());
+    assertEquals(estimate(sketch, "apple"), estimate(copy, "apple"));
+  }
+}
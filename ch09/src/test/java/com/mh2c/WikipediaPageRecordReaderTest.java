@@ -0,0 +1,254 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WikipediaPageRecordReaderTest {
+
+  private static final String[] WORDS = {
+    "cloud", "cluster", "hadoop", "instance", "network", "region", "storage",
+    "volume", "zone", "<", ">", "page", "<pag", "/page", "&lt;page&gt;"
+  };
+
+  private static final long BZIP2_BLOCK_MARKER = 0x314159265359L;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Configuration conf;
+  private List<String> pages;
+
+  @Before
+  public void setUp() {
+    conf = new Configuration();
+    pages = new ArrayList<String>();
+  }
+
+  /**
+   * Writes a dump of pages, keeping the pages to compare against.
+   */
+  private void writeDump(OutputStream out, int numPages) throws IOException {
+    Random random = new Random(numPages);
+    try (OutputStream dump = out) {
+      dump.write("<mediawiki>\n  <siteinfo>\n  </siteinfo>\n".getBytes(StandardCharsets.UTF_8));
+      for (int i = 0; i < numPages; i++) {
+        StringBuilder page = new StringBuilder("<page>\n    <title>Page " + i + "</title>\n" +
+                                               "    <text>");
+        int numWords = random.nextInt(40);
+        for (int j = 0; j < numWords; j++) {
+          page.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        page.append("</text>\n  </page>");
+        pages.add(page.toString());
+        dump.write(("  " + page + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+      dump.write("</mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private File writePlainDump(int numPages) throws IOException {
+    File file = folder.newFile("pages.xml");
+    writeDump(new FileOutputStream(file), numPages);
+    return file;
+  }
+
+  /**
+   * Writes a dump compressed with bzip2 in 100 KB blocks, so that even a
+   * small dump spans several blocks.
+   */
+  private File writeBzip2Dump(int numPages) throws IOException {
+    File file = folder.newFile("pages.xml.bz2");
+    OutputStream out = new FileOutputStream(file);
+    out.write("BZ".getBytes(StandardCharsets.US_ASCII));
+    writeDump(new CBZip2OutputStream(out, 1), numPages);
+    return file;
+  }
+
+  /**
+   * Reads pages from every split of a file, split every so many bytes.
+   */
+  private List<String> readSplits(File file, long splitSize) throws IOException {
+    List<Long> boundaries = new ArrayList<Long>();
+    for (long boundary = splitSize; boundary < file.length(); boundary += splitSize) {
+      boundaries.add(boundary);
+    }
+    return readSplits(file, boundaries);
+  }
+
+  /**
+   * Reads pages from every split of a file, split at the given offsets.
+   */
+  private List<String> readSplits(File file, List<Long> boundaries) throws IOException {
+    List<String> read = new ArrayList<String>();
+    Path path = new Path(file.toURI());
+    long start = 0L;
+    for (int i = 0; i <= boundaries.size(); i++) {
+      long end = i < boundaries.size() ? boundaries.get(i) : file.length();
+      read.addAll(read(new WikipediaPageRecordReader(conf, new FileSplit(path, start,
+                                                                         end - start,
+                                                                         (String[]) null))));
+      start = end;
+    }
+    return read;
+  }
+
+  private static List<String> read(RecordReader<Text, Text> reader) throws IOException {
+    List<String> read = new ArrayList<String>();
+    try {
+      Text key = reader.createKey();
+      Text value = reader.createValue();
+      while (reader.next(key, value)) {
+        read.add(key.toString());
+        assertEquals(0, value.getLength());
+      }
+    } finally {
+      reader.close();
+    }
+    return read;
+  }
+
+  @Test
+  public void testWholeFile() throws IOException {
+    File file = writePlainDump(20);
+    assertEquals(pages, readSplits(file, file.length()));
+  }
+
+  @Test
+  public void testTinySplits() throws IOException {
+    File file = writePlainDump(20);
+    // Splits of a few bytes end inside start tags and at every offset into
+    // them, including just before and just after the "<"
+    for (long splitSize = 1L; splitSize <= 16L; splitSize++) {
+      assertEquals("Split size " + splitSize, pages, readSplits(file, splitSize));
+    }
+  }
+
+  @Test
+  public void testSmallSplits() throws IOException {
+    File file = writePlainDump(200);
+    for (long splitSize : new long[] { 97L, 256L, 1000L, 4099L }) {
+      assertEquals("Split size " + splitSize, pages, readSplits(file, splitSize));
+    }
+  }
+
+  @Test
+  public void testSplitAtEveryOffsetOfStartTag() throws IOException {
+    File file = writePlainDump(3);
+    String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    long tag = text.indexOf("<page>", text.indexOf("<page>") + 1);
+    for (long boundary = tag - 1L; boundary <= tag + "<page>".length(); boundary++) {
+      assertEquals("Boundary " + (boundary - tag), pages,
+                   readSplits(file, Arrays.asList(boundary)));
+    }
+  }
+
+  @Test
+  public void testBzip2WholeFile() throws IOException {
+    File file = writeBzip2Dump(2000);
+    assertEquals(pages, readSplits(file, file.length()));
+  }
+
+  @Test
+  public void testBzip2Splits() throws IOException {
+    File file = writeBzip2Dump(2000);
+    // Splits both smaller and larger than the compressed blocks, so some
+    // hold no block start at all and others end inside one
+    for (long splitSize : new long[] { 1000L, 4099L, 20000L, file.length() / 2L + 1L }) {
+      assertEquals("Split size " + splitSize, pages, readSplits(file, splitSize));
+    }
+  }
+
+  /**
+   * Finds the bytes where the compressed blocks of a bzip2 file start. Blocks
+   * start with a 48-bit marker at any bit offset.
+   */
+  private static List<Long> findBzip2Blocks(byte[] bytes) {
+    List<Long> blocks = new ArrayList<Long>();
+    long bits = 0L;
+    for (int i = 0; i < bytes.length; i++) {
+      for (int bit = 7; bit >= 0; bit--) {
+        bits = ((bits << 1) | ((bytes[i] >> bit) & 1)) & 0xffffffffffffL;
+        if (bits == BZIP2_BLOCK_MARKER) {
+          // The marker began 47 bits back
+          blocks.add((i * 8L + (7 - bit) - 47L) / 8L);
+        }
+      }
+    }
+    return blocks;
+  }
+
+  @Test
+  public void testBzip2SplitsAtBlocks() throws IOException {
+    File file = writeBzip2Dump(2000);
+    List<Long> blocks = findBzip2Blocks(Files.readAllBytes(file.toPath()));
+    assertTrue(blocks.size() > 2);
+    for (long block : blocks) {
+      // Marker ends fall up to seven bytes in, and splits just past them
+      // must still be told apart from the ones that hold them
+      for (long boundary = block - 1L; boundary <= block + 9L; boundary++) {
+        assertEquals("Boundary " + (boundary - block) + " from block at " + block, pages,
+                     readSplits(file, Arrays.asList(boundary)));
+        assertEquals("Narrow split " + (boundary - block) + " from block at " + block, pages,
+                     readSplits(file, Arrays.asList(boundary, boundary + 2L)));
+      }
+    }
+  }
+
+  @Test
+  public void testInputFormatSplits() throws IOException {
+    File file = writeBzip2Dump(2000);
+    JobConf job = new JobConf(conf);
+    job.setInputFormat(WikipediaPageInputFormat.class);
+    WikipediaPageInputFormat.setInputPaths(job, new Path(file.toURI()));
+    WikipediaPageInputFormat format = (WikipediaPageInputFormat) job.getInputFormat();
+    InputSplit[] splits = format.getSplits(job, 20);
+    assertTrue(splits.length > 1);
+
+    List<String> read = new ArrayList<String>();
+    for (InputSplit split : splits) {
+      read.addAll(read(format.getRecordReader(split, job, Reporter.NULL)));
+    }
+    assertEquals(pages, read);
+  }
+}
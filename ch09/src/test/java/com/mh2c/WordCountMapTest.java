@@ -0,0 +1,111 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WordCountMapTest {
+
+  private WordCountMap map;
+
+  @Before
+  public void setUp() {
+    map = new WordCountMap();
+  }
+
+  private void add(String word) {
+    byte[] bytes = ("xx" + word).getBytes(StandardCharsets.UTF_8);
+    map.add(bytes, 2, bytes.length - 2, 1);
+  }
+
+  private Map<String, Integer> contents() {
+    Map<String, Integer> contents = new HashMap<String, Integer>();
+    for (int i = 0; i < map.size(); i++) {
+      contents.put(new String(map.keyData(), map.keyStart(i), map.keyLength(i),
+                              StandardCharsets.UTF_8),
+                   map.count(i));
+    }
+    return contents;
+  }
+
+  @Test
+  public void testAdd() {
+    add("apple");
+    add("banana");
+    add("apple");
+    add("");
+
+    Map<String, Integer> contents = contents();
+    assertEquals(3, map.size());
+    assertEquals(Integer.valueOf(2), contents.get("apple"));
+    assertEquals(Integer.valueOf(1), contents.get("banana"));
+    assertEquals(Integer.valueOf(1), contents.get(""));
+  }
+
+  @Test
+  public void testGrowth() {
+    for (int i = 0; i < 10000; i++) {
+      add("word" + (i % 5000));
+    }
+
+    Map<String, Integer> contents = contents();
+    assertEquals(5000, map.size());
+    for (int i = 0; i < 5000; i++) {
+      assertEquals(Integer.valueOf(2), contents.get("word" + i));
+    }
+  }
+
+  @Test
+  public void testMemoryUsedCountsCapacity() {
+    long emptySize = map.memoryUsed();
+    // Space is allocated up front, so small additions use none
+    add("apple");
+    assertEquals(emptySize, map.memoryUsed());
+
+    // Growing the map allocates more than the words take up
+    for (int i = 0; i < 5000; i++) {
+      add("word" + i);
+    }
+    long grownSize = map.memoryUsed();
+    assertTrue(grownSize > emptySize);
+    assertTrue(grownSize >= map.keyData().length + map.size() * 16L);
+
+    // Cleared space is kept, and still counted
+    map.clear();
+    assertEquals(grownSize, map.memoryUsed());
+  }
+
+  @Test
+  public void testClear() {
+    add("apple");
+    long emptySize = new WordCountMap().memoryUsed();
+    map.clear();
+    assertEquals(0, map.size());
+    assertEquals(emptySize, map.memoryUsed());
+
+    add("banana");
+    assertEquals(Integer.valueOf(1), contents().get("banana"));
+  }
+}
@@ -0,0 +1,126 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.KeyValueTextInputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WordSamplerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Text[] samples(String... words) {
+    Text[] samples = new Text[words.length];
+    for (int i = 0; i < words.length; i++) {
+      samples[i] = new Text(words[i]);
+    }
+    return samples;
+  }
+
+  private static List<String> strings(List<Text> texts) {
+    List<String> strings = new ArrayList<String>();
+    for (Text text : texts) {
+      strings.add(text.toString());
+    }
+    return strings;
+  }
+
+  @Test
+  public void testEvenSplits() {
+    List<Text> splitPoints =
+      WordSampler.chooseSplitPoints(samples("d", "a", "c", "b", "f", "e"), 3);
+    assertEquals(Arrays.asList("c", "e"), strings(splitPoints));
+  }
+
+  @Test
+  public void testFrequentWordIsolated() {
+    List<Text> splitPoints = WordSampler.chooseSplitPoints(
+      samples("a", "b", "the", "the", "the", "the", "x", "y"), 4);
+    assertEquals(Arrays.asList("the", "x"), strings(splitPoints));
+  }
+
+  @Test
+  public void testNeverTooManySplitPoints() {
+    List<Text> splitPoints =
+      WordSampler.chooseSplitPoints(samples("a", "b", "c", "d", "e", "f", "g", "h"), 3);
+    assertEquals(2, splitPoints.size());
+    assertTrue(splitPoints.get(0).compareTo(splitPoints.get(1)) < 0);
+  }
+
+  private JobConf sampledJob() throws IOException {
+    File input = folder.newFile("articles.txt");
+    StringBuilder articles = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      articles.append("Article ").append(i).append('\t')
+        .append("the quick brown fox jumps over the lazy dog number ").append(i).append('\n');
+    }
+    Files.write(input.toPath(), articles.toString().getBytes(StandardCharsets.UTF_8));
+
+    JobConf job = new JobConf();
+    job.setInputFormat(KeyValueTextInputFormat.class);
+    FileInputFormat.setInputPaths(job, new Path(input.toURI()));
+    job.setFloat(WordSampler.FREQUENCY_PROPERTY, 0.5f);
+    return job;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Text[] sample(JobConf job) throws IOException {
+    return new WordSampler().getSample((InputFormat<Text, Text>) job.getInputFormat(), job);
+  }
+
+  @Test
+  public void testSampleIsRepeatable() throws Exception {
+    JobConf job = sampledJob();
+    Text[] first = sample(job);
+    Text[] second = sample(job);
+    assertTrue(first.length > 0);
+    assertEquals(Arrays.asList(first), Arrays.asList(second));
+
+    job.setLong(WordSampler.SEED_PROPERTY, 42L);
+    Text[] reseeded = sample(job);
+    assertTrue(!Arrays.asList(first).equals(Arrays.asList(reseeded)));
+  }
+
+  @Test
+  public void testMapreduceApi() throws Exception {
+    JobConf job = sampledJob();
+    Text[] mapred = sample(job);
+    Text[] mapreduce = new WordSampler().getSample(
+      new org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat(), Job.getInstance(job));
+    assertEquals(Arrays.asList(mapred), Arrays.asList(mapreduce));
+  }
+}
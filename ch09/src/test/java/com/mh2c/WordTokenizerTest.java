@@ -0,0 +1,92 @@
+/*
+Copyright 2016 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class WordTokenizerTest {
+
+  private static String[] tokenize(String type, Text text) {
+    WordTokenizer tokenizer = WordTokenizer.create(type);
+    tokenizer.reset(text);
+    List<String> words = new ArrayList<String>();
+    while (tokenizer.next()) {
+      words.add(new String(tokenizer.wordBytes(), tokenizer.wordStart(),
+                           tokenizer.wordLength(), StandardCharsets.UTF_8));
+    }
+    return words.toArray(new String[words.size()]);
+  }
+
+  @Test
+  public void testWhitespaceMatchesSplit() {
+    String[] samples = {
+      "", " ", "\t\n", "one", "one two", " one", "one ", "  one  two\tthree\r\n",
+      "café naïve", " nbsp is not space", "a\u000bb\fc"
+    };
+    for (String sample : samples) {
+      assertArrayEquals(sample.split("\\s+"),
+                        tokenize(WordTokenizer.WHITESPACE, new Text(sample)));
+    }
+  }
+
+  @Test
+  public void testWhitespaceMatchesSplitRandom() {
+    char[] chars = { 'a', 'B', ' ', '\t', '\n', '\r', 'é', '中', '.', ' ' };
+    Random random = new Random(42L);
+    Text text = new Text();
+    for (int i = 0; i < 1000; i++) {
+      StringBuilder sb = new StringBuilder();
+      int length = random.nextInt(20);
+      for (int j = 0; j < length; j++) {
+        sb.append(chars[random.nextInt(chars.length)]);
+      }
+      String sample = sb.toString();
+      // Reuse the Text, as the mapper does, so stale bytes past its length
+      // are present
+      text.set(sample);
+      assertArrayEquals(sample.split("\\s+"), tokenize(WordTokenizer.WHITESPACE, text));
+    }
+  }
+
+  @Test
+  public void testUnicode() {
+    assertArrayEquals(new String[] { "the", "café", "s", "2nd", "über", "中文" },
+                      tokenize(WordTokenizer.UNICODE,
+                               new Text("The CAFÉ's 2nd, [[Über]] 中文!")));
+  }
+
+  @Test
+  public void testUnicodeNoWords() {
+    assertArrayEquals(new String[0], tokenize(WordTokenizer.UNICODE, new Text("")));
+    assertArrayEquals(new String[0], tokenize(WordTokenizer.UNICODE, new Text(" -- ")));
+  }
+
+  @Test
+  public void testUnicodeInvalidBytes() {
+    Text text = new Text();
+    text.set(new byte[] { 'a', (byte) 0xff, 'b', (byte) 0xc3 }, 0, 4);
+    assertArrayEquals(new String[] { "a", "b" }, tokenize(WordTokenizer.UNICODE, text));
+  }
+}
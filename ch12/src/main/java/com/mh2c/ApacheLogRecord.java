@@ -17,10 +17,10 @@ limitations under the License.
 package com.mh2c;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 /**
  * A class representing a simplified Apache access log record.
@@ -107,31 +107,297 @@ public class ApacheLogRecord implements Serializable {
                                this.status, this.bytes, userAgent);
   }
 
-  private static final Pattern PARSE_PATTERN = Pattern.compile(
-    "^(\\S+) \\S+ \\S+ \\[([^]]+)\\] \"(\\S+) (\\S+) \\S+\" (\\d+) (\\d+) \\S+ \"([^\"]+)\"$"
-  );
   static final DateTimeFormatter TIMESTAMP_FORMATTER =
     DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z");
 
+  private static final String PARSE_FAILURE = "Line does not match expected pattern";
+
+  /**
+   * The most recently parsed timestamp. Log lines arrive in roughly time
+   * order, so consecutive lines usually share the same timestamp text.
+   */
+  private static final class CachedTimestamp {
+    private final byte[] text;
+    private final ZonedDateTime dateTime;
+
+    private CachedTimestamp(byte[] text, ZonedDateTime dateTime) {
+      this.text = text;
+      this.dateTime = dateTime;
+    }
+  }
+
+  private static volatile CachedTimestamp cachedTimestamp =
+    new CachedTimestamp(new byte[0], null);
+
   /**
    * Parses a new record from a string.
    *
    * @param logLine line from access log
    * @throws IllegalArgumentException if the line cannot be parsed
+   * @see #ApacheLogRecord(byte[])
    */
   public ApacheLogRecord(String logLine) {
-    Matcher m = PARSE_PATTERN.matcher(logLine);
-    if (!m.find()) {
-      throw new IllegalArgumentException("Line does not match expected pattern");
-    }
-
-    ipAddress = m.group(1);
-    dateTime = TIMESTAMP_FORMATTER.parse(m.group(2), ZonedDateTime::from);
-    method = m.group(3);
-    resource = m.group(4);
-    status = Integer.parseInt(m.group(5));
-    bytes = Long.parseLong(m.group(6));
-    userAgent = m.group(7);
+    this(logLine.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Parses a new record from UTF-8 bytes.
+   *
+   * @param logLine line from access log, in UTF-8
+   * @throws IllegalArgumentException if the line cannot be parsed
+   * @throws java.time.format.DateTimeException if the timestamp cannot be
+   * parsed
+   * @see Builder#parse(byte[])
+   */
+  public ApacheLogRecord(byte[] logLine) {
+    this(new Builder().parse(logLine));
+  }
+
+  private ApacheLogRecord(Builder builder) {
+    this(builder.ipAddress, builder.dateTime, builder.method, builder.resource, builder.status,
+         builder.bytes, builder.userAgent);
+  }
+
+  /**
+   * A mutable staging area for a record. One builder can be reused to parse
+   * many lines and adjust their fields before building each record, so that
+   * no intermediate records are created.
+   */
+  public static class Builder {
+
+    private String ipAddress;
+    private ZonedDateTime dateTime;
+    private String method;
+    private String resource;
+    private int status;
+    private long bytes;
+    private String userAgent;
+    private long generatedAt;
+
+    /**
+     * Parses UTF-8 bytes into this builder. A line has the form
+     *
+     * <pre>
+     * ip ident user [timestamp] "method resource protocol" status bytes referrer "user agent"
+     * </pre>
+     *
+     * where fields outside brackets and quotes are non-empty runs of
+     * non-whitespace, separated by single spaces, and the line may end with
+     * one line terminator.
+     *
+     * @param logLine line from access log, in UTF-8
+     * @return this builder
+     * @throws IllegalArgumentException if the line cannot be parsed
+     * @throws java.time.format.DateTimeException if the timestamp cannot be
+     * parsed
+     */
+    public Builder parse(byte[] logLine) {
+      int end = trimLineTerminator(logLine);
+
+      int ipEnd = expectField(logLine, 0, end, ' ');
+      int identEnd = expectField(logLine, ipEnd + 1, end, ' ');
+      int userEnd = expectField(logLine, identEnd + 1, end, ' ');
+      expect(logLine, userEnd + 1, end, '[');
+      int timestampStart = userEnd + 2;
+      int timestampEnd = indexOf(logLine, timestampStart, end, ']');
+      expect(logLine, timestampEnd + 1, end, ' ');
+      expect(logLine, timestampEnd + 2, end, '"');
+      int methodStart = timestampEnd + 3;
+      int methodEnd = expectField(logLine, methodStart, end, ' ');
+      int resourceEnd = expectField(logLine, methodEnd + 1, end, ' ');
+      // The protocol runs up to the closing quote, which must end its field
+      int protocolEnd = expectField(logLine, resourceEnd + 1, end, ' ') - 1;
+      if (protocolEnd <= resourceEnd + 1 || logLine[protocolEnd] != '"') {
+        throw new IllegalArgumentException(PARSE_FAILURE);
+      }
+      int statusStart = protocolEnd + 2;
+      int statusEnd = expectDigits(logLine, statusStart, end, ' ');
+      int bytesEnd = expectDigits(logLine, statusEnd + 1, end, ' ');
+      int referrerEnd = expectField(logLine, bytesEnd + 1, end, ' ');
+      expect(logLine, referrerEnd + 1, end, '"');
+      int userAgentStart = referrerEnd + 2;
+      int userAgentEnd = indexOf(logLine, userAgentStart, end, '"');
+      if (userAgentEnd != end - 1) {
+        throw new IllegalArgumentException(PARSE_FAILURE);
+      }
+
+      ipAddress = decode(logLine, 0, ipEnd);
+      dateTime = parseTimestamp(logLine, timestampStart, timestampEnd);
+      method = decode(logLine, methodStart, methodEnd);
+      resource = decode(logLine, methodEnd + 1, resourceEnd);
+      status = (int) parseNumber(logLine, statusStart, statusEnd, 9);
+      bytes = parseNumber(logLine, statusEnd + 1, bytesEnd, 18);
+      userAgent = decode(logLine, userAgentStart, userAgentEnd);
+      generatedAt = parseGenerationTime(logLine, ipEnd + 1, identEnd);
+      return this;
+    }
+
+    public String getIpAddress() {
+      return ipAddress;
+    }
+
+    public Builder setIpAddress(String ipAddress) {
+      this.ipAddress = ipAddress;
+      return this;
+    }
+
+    public String getUserAgent() {
+      return userAgent;
+    }
+
+    public Builder setUserAgent(String userAgent) {
+      this.userAgent = userAgent;
+      return this;
+    }
+
+    /**
+     * Gets the time when the last line parsed was generated. The log
+     * generators put this time, in milliseconds since the epoch, in the
+     * otherwise unused identity field.
+     *
+     * @return generation time, or 0 if the identity field does not hold one
+     */
+    public long getGeneratedAt() {
+      return generatedAt;
+    }
+
+    /**
+     * Creates a record from the current fields.
+     *
+     * @return new record
+     */
+    public ApacheLogRecord build() {
+      return new ApacheLogRecord(this);
+    }
+  }
+
+  /**
+   * Finds the end of a line, ignoring one trailing line terminator.
+   */
+  private static int trimLineTerminator(byte[] b) {
+    int end = b.length;
+    if (end >= 2 && b[end - 2] == '\r' && b[end - 1] == '\n') {
+      return end - 2;
+    }
+    if (end >= 1 && (b[end - 1] == '\n' || b[end - 1] == '\r')) {
+      return end - 1;
+    }
+    // NEL, LINE SEPARATOR, PARAGRAPH SEPARATOR
+    if (end >= 2 && (b[end - 2] & 0xff) == 0xc2 && (b[end - 1] & 0xff) == 0x85) {
+      return end - 2;
+    }
+    if (end >= 3 && (b[end - 3] & 0xff) == 0xe2 && (b[end - 2] & 0xff) == 0x80 &&
+        ((b[end - 1] & 0xff) == 0xa8 || (b[end - 1] & 0xff) == 0xa9)) {
+      return end - 3;
+    }
+    return end;
+  }
+
+  private static boolean isWhitespace(byte c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0b || c == '\f' || c == '\r';
+  }
+
+  private static void expect(byte[] b, int pos, int end, char c) {
+    if (pos >= end || b[pos] != c) {
+      throw new IllegalArgumentException(PARSE_FAILURE);
+    }
+  }
+
+  /**
+   * Checks for a non-empty run of non-whitespace followed by a delimiter, and
+   * returns the position of the delimiter.
+   */
+  private static int expectField(byte[] b, int start, int end, char delimiter) {
+    int pos = start;
+    while (pos < end && !isWhitespace(b[pos])) {
+      pos++;
+    }
+    if (pos == start) {
+      throw new IllegalArgumentException(PARSE_FAILURE);
+    }
+    expect(b, pos, end, delimiter);
+    return pos;
+  }
+
+  /**
+   * Checks for a non-empty run of ASCII digits followed by a delimiter, and
+   * returns the position of the delimiter.
+   */
+  private static int expectDigits(byte[] b, int start, int end, char delimiter) {
+    int pos = start;
+    while (pos < end && b[pos] >= '0' && b[pos] <= '9') {
+      pos++;
+    }
+    if (pos == start) {
+      throw new IllegalArgumentException(PARSE_FAILURE);
+    }
+    expect(b, pos, end, delimiter);
+    return pos;
+  }
+
+  /**
+   * Finds a byte that must be preceded by at least one other byte.
+   */
+  private static int indexOf(byte[] b, int start, int end, char c) {
+    for (int pos = start; pos < end; pos++) {
+      if (b[pos] == c) {
+        if (pos == start) {
+          break;
+        }
+        return pos;
+      }
+    }
+    throw new IllegalArgumentException(PARSE_FAILURE);
+  }
+
+  private static String decode(byte[] b, int start, int end) {
+    return new String(b, start, end - start, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Parses digits, deferring to the JDK for values long enough to overflow
+   * so that overflow fails the same way.
+   */
+  private static long parseNumber(byte[] b, int start, int end, int maxFastDigits) {
+    if (end - start > maxFastDigits) {
+      String digits = decode(b, start, end);
+      return maxFastDigits < 18 ? Integer.parseInt(digits) : Long.parseLong(digits);
+    }
+    long value = 0L;
+    for (int pos = start; pos < end; pos++) {
+      value = value * 10L + (b[pos] - '0');
+    }
+    return value;
+  }
+
+  private static long parseGenerationTime(byte[] b, int start, int end) {
+    if (end - start > 18) {
+      return 0L;
+    }
+    for (int pos = start; pos < end; pos++) {
+      if (b[pos] < '0' || b[pos] > '9') {
+        return 0L;
+      }
+    }
+    return parseNumber(b, start, end, 18);
+  }
+
+  private static ZonedDateTime parseTimestamp(byte[] b, int start, int end) {
+    CachedTimestamp cached = cachedTimestamp;
+    byte[] text = cached.text;
+    if (text.length == end - start) {
+      int i = 0;
+      while (i < text.length && text[i] == b[start + i]) {
+        i++;
+      }
+      if (i == text.length) {
+        return cached.dateTime;
+      }
+    }
+    ZonedDateTime dateTime = TIMESTAMP_FORMATTER.parse(decode(b, start, end),
+                                                        ZonedDateTime::from);
+    cachedTimestamp = new CachedTimestamp(Arrays.copyOfRange(b, start, end), dateTime);
+    return dateTime;
   }
 
   @Override
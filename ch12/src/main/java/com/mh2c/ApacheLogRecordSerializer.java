@@ -0,0 +1,70 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * A compact Kryo serializer for {@link ApacheLogRecord}. The timestamp is
+ * written as epoch seconds, nanoseconds and a zone offset, and numbers are
+ * written as variable-length integers, so a typical record takes only a few
+ * bytes beyond its strings. Timestamps are restored with their zone offset,
+ * which is the zone that parsed records have.
+ */
+public class ApacheLogRecordSerializer extends Serializer<ApacheLogRecord> {
+
+  public ApacheLogRecordSerializer() {
+    // Records are immutable, so copies can share them
+    setImmutable(true);
+  }
+
+  @Override
+  public void write(Kryo kryo, Output output, ApacheLogRecord record) {
+    output.writeString(record.getIpAddress());
+    ZonedDateTime dateTime = record.getDateTime();
+    output.writeVarLong(dateTime.toEpochSecond(), false);
+    output.writeVarInt(dateTime.getNano(), true);
+    output.writeVarInt(dateTime.getOffset().getTotalSeconds(), false);
+    output.writeString(record.getMethod());
+    output.writeString(record.getResource());
+    output.writeVarInt(record.getStatus(), true);
+    output.writeVarLong(record.getBytes(), true);
+    output.writeString(record.getUserAgent());
+  }
+
+  @Override
+  public ApacheLogRecord read(Kryo kryo, Input input, Class<ApacheLogRecord> type) {
+    String ipAddress = input.readString();
+    long epochSecond = input.readVarLong(false);
+    int nano = input.readVarInt(true);
+    ZoneOffset offset = ZoneOffset.ofTotalSeconds(input.readVarInt(false));
+    ZonedDateTime dateTime =
+      ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nano), offset);
+    String method = input.readString();
+    String resource = input.readString();
+    int status = input.readVarInt(true);
+    long bytes = input.readVarLong(true);
+    String userAgent = input.readString();
+    return new ApacheLogRecord(ipAddress, dateTime, method, resource, status, bytes,
+                               userAgent);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+
+/**
+ * Writes records as Parquet or ORC files with a column for each record
+ * field, partitioned by the hour of each record's timestamp in UTC. Files
+ * land under Hive-style "hour=yyyy-MM-dd-HH" directories beneath the output
+ * directory, so that queries over an external table partitioned by hour can
+ * skip whole hours and unneeded columns. The ORC format requires Spark's Hive
+ * support on the classpath.
+ *
+ * Both formats dictionary encode low-cardinality columns, such as the
+ * method, resource, status and user agent category, by default.
+ */
+class ColumnarLogWriter implements Serializable {
+
+  static final String FORMAT_PROPERTY = "spark.mh2c.output.format";
+  static final String TEXT = "text";
+  static final String PARQUET = "parquet";
+  static final String ORC = "orc";
+  static final String DEFAULT_FORMAT = TEXT;
+
+  static final String HOUR_COLUMN = "hour";
+  static final StructType SCHEMA = DataTypes.createStructType(new StructField[] {
+    DataTypes.createStructField("ip_address", DataTypes.StringType, false),
+    DataTypes.createStructField("date_time", DataTypes.TimestampType, false),
+    DataTypes.createStructField("method", DataTypes.StringType, false),
+    DataTypes.createStructField("resource", DataTypes.StringType, false),
+    DataTypes.createStructField("status", DataTypes.IntegerType, false),
+    DataTypes.createStructField("bytes", DataTypes.LongType, false),
+    DataTypes.createStructField("user_agent", DataTypes.StringType, false),
+    DataTypes.createStructField(HOUR_COLUMN, DataTypes.StringType, false)
+  });
+
+  private static final DateTimeFormatter HOUR_FORMATTER =
+    DateTimeFormatter.ofPattern("yyyy-MM-dd-HH").withZone(ZoneOffset.UTC);
+
+  private final String format;
+  private final String outputDir;
+
+  /**
+   * Creates a new writer.
+   *
+   * @param format output format, {@value #PARQUET} or {@value #ORC}
+   * @param outputDir output directory
+   * @throws IllegalArgumentException if the format is not supported
+   */
+  ColumnarLogWriter(String format, String outputDir) {
+    if (!format.equals(PARQUET) && !format.equals(ORC)) {
+      throw new IllegalArgumentException("Unsupported output format " + format);
+    }
+    this.format = format;
+    this.outputDir = outputDir;
+  }
+
+  /**
+   * Converts a record to a row.
+   *
+   * @param record record
+   * @return row matching {@link #SCHEMA}
+   */
+  static Row toRow(ApacheLogRecord record) {
+    return RowFactory.create(record.getIpAddress(),
+                             Timestamp.from(record.getDateTime().toInstant()),
+                             record.getMethod(), record.getResource(), record.getStatus(),
+                             record.getBytes(), record.getUserAgent(),
+                             HOUR_FORMATTER.format(record.getDateTime()));
+  }
+
+  /**
+   * Appends records to the output.
+   *
+   * @param records records
+   */
+  void write(JavaRDD<ApacheLogRecord> records) {
+    if (records.isEmpty()) {
+      return;
+    }
+    SparkSession spark = SparkSession.builder()
+      .config(records.context().getConf())
+      .getOrCreate();
+    Dataset<Row> rows = spark.createDataFrame(records.map(ColumnarLogWriter::toRow), SCHEMA);
+    rows.write()
+      .mode(SaveMode.Append)
+      .format(format)
+      .partitionBy(HOUR_COLUMN)
+      // Guard against a cluster default that turns off Parquet dictionaries
+      .option("parquet.enable.dictionary", "true")
+      .save(outputDir);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import org.apache.spark.util.AccumulatorV2;
+
+/**
+ * An accumulator that gathers values recorded by tasks into a
+ * {@link LatencyHistogram} on the driver.
+ */
+class HistogramAccumulator extends AccumulatorV2<Long, LatencyHistogram> {
+
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+  /**
+   * Records a value, without boxing it.
+   *
+   * @param value value
+   */
+  void record(long value) {
+    histogram.record(value);
+  }
+
+  @Override
+  public boolean isZero() {
+    return histogram.getCount() == 0L;
+  }
+
+  @Override
+  public HistogramAccumulator copy() {
+    HistogramAccumulator copy = new HistogramAccumulator();
+    copy.histogram.add(histogram, 0L);
+    return copy;
+  }
+
+  @Override
+  public void reset() {
+    histogram.reset();
+  }
+
+  @Override
+  public void add(Long value) {
+    histogram.record(value);
+  }
+
+  @Override
+  public void merge(AccumulatorV2<Long, LatencyHistogram> other) {
+    histogram.add(other.value(), 0L);
+  }
+
+  @Override
+  public LatencyHistogram value() {
+    return histogram;
+  }
+}
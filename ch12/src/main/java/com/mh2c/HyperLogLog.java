@@ -0,0 +1,208 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog sketch, which estimates the number of distinct values added
+ * to it in a fixed 2^precision bytes, with a standard error of about
+ * 1.04 / sqrt(2^precision). Values are added as 64-bit hashes, which must
+ * already be uniformly distributed. Sketches with the same precision merge
+ * into a sketch of the union of their values, in any order and any number
+ * of times.
+ *
+ * In binary form, a sketch is its precision followed by either all its
+ * registers, or, when few are set, the index and value of each set one.
+ */
+final class HyperLogLog implements Serializable {
+
+  static final int MIN_PRECISION = 4;
+  static final int MAX_PRECISION = 16;
+
+  private static final byte DENSE = 0;
+  private static final byte SPARSE = 1;
+
+  private final int precision;
+  private final byte[] registers;
+
+  /**
+   * Creates a new, empty sketch.
+   *
+   * @param precision number of bits of each hash that pick a register
+   * @throws IllegalArgumentException if the precision is out of range
+   */
+  HyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be from " + MIN_PRECISION + " to " +
+                                         MAX_PRECISION);
+    }
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Adds a hashed value.
+   *
+   * @param hash uniformly distributed 64-bit hash of the value
+   * @return this sketch
+   */
+  HyperLogLog add(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    // Position of the first one bit after the index bits, capped by a guard bit
+    byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) |
+                                                  (1L << (precision - 1))) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+    }
+    return this;
+  }
+
+  /**
+   * Merges another sketch into this one.
+   *
+   * @param other sketch to merge
+   * @return this sketch
+   * @throws IllegalArgumentException if the sketches have different
+   * precisions
+   */
+  HyperLogLog merge(HyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("Cannot merge sketch of precision " +
+                                         other.precision + " into one of " + precision);
+    }
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Estimates the number of distinct values added.
+   *
+   * @return estimated count
+   */
+  long estimate() {
+    int m = registers.length;
+    double sum = 0.0;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        zeros++;
+      }
+    }
+    double estimate = alpha(m) * m * m / sum;
+    // Small counts leave many registers empty; count those instead
+    if (estimate <= 2.5 * m && zeros > 0) {
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  private static double alpha(int m) {
+    switch (m) {
+    case 16:
+      return 0.673;
+    case 32:
+      return 0.697;
+    case 64:
+      return 0.709;
+    default:
+      return 0.7213 / (1.0 + 1.079 / m);
+    }
+  }
+
+  /**
+   * Gets the sketch in binary form.
+   *
+   * @return bytes
+   */
+  byte[] toBytes() {
+    int set = 0;
+    for (byte register : registers) {
+      if (register != 0) {
+        set++;
+      }
+    }
+    if (set * 3 >= registers.length) {
+      ByteBuffer buffer = ByteBuffer.allocate(2 + registers.length);
+      buffer.put((byte) precision).put(DENSE).put(registers);
+      return buffer.array();
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(2 + set * 3);
+    buffer.put((byte) precision).put(SPARSE);
+    for (int i = 0; i < registers.length; i++) {
+      if (registers[i] != 0) {
+        buffer.putShort((short) i).put(registers[i]);
+      }
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Reads a sketch in binary form.
+   *
+   * @param bytes bytes
+   * @return sketch
+   * @throws IllegalArgumentException if the bytes are not a sketch
+   */
+  static HyperLogLog fromBytes(byte[] bytes) {
+    if (bytes.length < 2) {
+      throw new IllegalArgumentException("Sketch is truncated");
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    HyperLogLog sketch = new HyperLogLog(buffer.get());
+    byte form = buffer.get();
+    if (form == DENSE && buffer.remaining() == sketch.registers.length) {
+      buffer.get(sketch.registers);
+    } else if (form == SPARSE && buffer.remaining() % 3 == 0) {
+      while (buffer.hasRemaining()) {
+        int index = buffer.getShort() & 0xffff;
+        if (index >= sketch.registers.length) {
+          throw new IllegalArgumentException("Register " + index + " out of range");
+        }
+        sketch.registers[index] = buffer.get();
+      }
+    } else {
+      throw new IllegalArgumentException("Malformed sketch");
+    }
+    return sketch;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof HyperLogLog)) {
+      return false;
+    }
+    HyperLogLog sketch = (HyperLogLog) other;
+    return precision == sketch.precision && Arrays.equals(registers, sketch.registers);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(registers);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import java.io.Serializable;
+import org.apache.spark.util.LongAccumulator;
+
+/**
+ * A bounded cache of anonymized IP addresses, in front of an
+ * {@link IpAnonymizer}. Access logs come from a limited set of heavily
+ * repeated addresses, so most lookups avoid hashing. A nearly least recently
+ * used address is evicted when the cache is full, and lookups on different
+ * threads rarely contend (see {@link LruCache}). Broadcast the cache so
+ * that each executor keeps one copy for all of its tasks.
+ */
+class IpAnonymizationCache implements Serializable {
+
+  static final String SIZE_PROPERTY = "spark.mh2c.anonymizer.cache.size";
+  static final int DEFAULT_SIZE = 100000;
+
+  private final IpAnonymizer anonymizer;
+  private final int maxSize;
+  private transient volatile LruCache<String, String> cache;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param anonymizer anonymizer for addresses not in the cache
+   * @param maxSize maximum number of addresses to keep
+   */
+  IpAnonymizationCache(IpAnonymizer anonymizer, int maxSize) {
+    this.anonymizer = anonymizer;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Anonymizes an IP address, using the cached result if there is one.
+   *
+   * @param ipAddress IP address
+   * @param hits accumulator for cache hits
+   * @param misses accumulator for cache misses
+   * @return anonymized address
+   */
+  String anonymize(String ipAddress, LongAccumulator hits, LongAccumulator misses) {
+    LruCache<String, String> cache = getCache();
+    String anonymized = cache.get(ipAddress);
+    if (anonymized != null) {
+      hits.add(1L);
+      return anonymized;
+    }
+
+    // Hash outside the cache lock, so that misses on different threads
+    // overlap
+    misses.add(1L);
+    anonymized = anonymizer.anonymize(ipAddress);
+    cache.put(ipAddress, anonymized);
+    return anonymized;
+  }
+
+  private LruCache<String, String> getCache() {
+    // Checked again under the lock, so that lookups only read the field once
+    // the cache exists
+    LruCache<String, String> result = cache;
+    if (result == null) {
+      synchronized (this) {
+        result = cache;
+        if (result == null) {
+          result = new LruCache<>(maxSize);
+          cache = result;
+        }
+      }
+    }
+    return result;
+  }
+}
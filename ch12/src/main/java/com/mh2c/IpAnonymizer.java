@@ -0,0 +1,128 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Replaces IP addresses with hashes of them. The hash is chosen with the
+ * {@value #ANONYMIZER_PROPERTY} Spark property: "md5" (the default) hashes
+ * the address alone, while "hmac-sha256" uses a keyed hash with the key in
+ * {@value #KEY_PROPERTY}, so that addresses cannot be recovered by hashing
+ * every possible address.
+ */
+abstract class IpAnonymizer implements Serializable {
+
+  static final String ANONYMIZER_PROPERTY = "spark.mh2c.anonymizer";
+  static final String KEY_PROPERTY = "spark.mh2c.anonymizer.key";
+  static final String MD5 = "md5";
+  static final String HMAC_SHA256 = "hmac-sha256";
+  static final String DEFAULT_ANONYMIZER = MD5;
+
+  /**
+   * Creates a new anonymizer.
+   *
+   * @param type anonymizer type
+   * @param key secret key, for keyed hashes
+   * @return anonymizer
+   * @throws IllegalArgumentException if the type is unknown, or a key is
+   * needed but missing
+   */
+  static IpAnonymizer create(String type, String key) {
+    switch (type) {
+    case MD5:
+      return new Md5();
+    case HMAC_SHA256:
+      if (key == null || key.isEmpty()) {
+        throw new IllegalArgumentException("A key is required in " + KEY_PROPERTY);
+      }
+      return new HmacSha256(key.getBytes(StandardCharsets.UTF_8));
+    default:
+      throw new IllegalArgumentException("Unknown anonymizer " + type);
+    }
+  }
+
+  /**
+   * Anonymizes an IP address.
+   *
+   * @param ipAddress IP address
+   * @return anonymized address
+   */
+  abstract String anonymize(String ipAddress);
+
+  /**
+   * An anonymizer that encodes the MD5 hash of an address. Note that MD5 is
+   * not strong enough for production use.
+   */
+  static class Md5 extends IpAnonymizer {
+    @Override
+    String anonymize(String ipAddress) {
+      try {
+        return Base64.getEncoder().encodeToString(
+          MessageDigest.getInstance("MD5").digest(ipAddress.getBytes(StandardCharsets.UTF_8)));
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException("MD5 is not available", e);
+      }
+    }
+  }
+
+  /**
+   * An anonymizer that encodes the HMAC-SHA256 of an address.
+   */
+  static class HmacSha256 extends IpAnonymizer {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final byte[] key;
+    // Mac objects are not thread safe, and not serializable
+    private transient ThreadLocal<Mac> macs;
+
+    HmacSha256(byte[] key) {
+      this.key = key.clone();
+    }
+
+    @Override
+    String anonymize(String ipAddress) {
+      Mac mac = getMac();
+      return Base64.getEncoder().encodeToString(
+        mac.doFinal(ipAddress.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac getMac() {
+      synchronized (this) {
+        if (macs == null) {
+          macs = ThreadLocal.withInitial(this::newMac);
+        }
+      }
+      return macs.get();
+    }
+
+    private Mac newMac() {
+      try {
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(new SecretKeySpec(key, ALGORITHM));
+        return mac;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException("Unable to create " + ALGORITHM + " MAC", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sink that sends log lines to an Amazon Kinesis stream. Lines are
+ * gathered into PutRecords requests within the Kinesis size limits, and
+ * several requests are kept in flight at once; writers wait when all
+ * requests are busy. Each line gets the next of a sequence of partition
+ * keys, which spreads lines evenly across shards. Entries that a request
+ * fails to put, for example because a shard is over its throughput limit,
+ * are retried with backoff.
+ *
+ * A request is sent once it is full, or once its first line has waited
+ * {@value #DEFAULT_LINGER_MS} milliseconds by default, so that lines written
+ * slowly still arrive promptly.
+ */
+public class KinesisLogSink implements LogSink {
+
+  /**
+   * The one Kinesis operation the sink needs. An AmazonKinesisClient
+   * provides it as {@code client::putRecords}.
+   */
+  public interface Client {
+    PutRecordsResult putRecords(PutRecordsRequest request);
+  }
+
+  static final int MAX_RECORDS_PER_REQUEST = 500;
+  static final int MAX_BYTES_PER_REQUEST = 5 * 1024 * 1024;
+  static final int MAX_BYTES_PER_RECORD = 1024 * 1024;
+  static final int DEFAULT_MAX_IN_FLIGHT = 8;
+  static final long DEFAULT_LINGER_MS = 100L;
+
+  private static final int MAX_ATTEMPTS = 8;
+  private static final long INITIAL_BACKOFF_MS = 50L;
+  private static final long MAX_BACKOFF_MS = 2000L;
+
+  private final Client client;
+  private final String streamName;
+  private final Semaphore inFlight;
+  private final ExecutorService senders;
+  private final long lingerNanos;
+  private final ScheduledExecutorService lingerTimer;
+
+  private List<PutRecordsRequestEntry> batch = new ArrayList<>();
+  private int batchBytes;
+  private long batchStart;
+  private long nextPartitionKey;
+
+  private final Meter numSent = new Meter();
+  private final AtomicLong numRetried = new AtomicLong();
+  private final AtomicLong numFailed = new AtomicLong();
+  private final LatencyHistogram putLatency = new LatencyHistogram();
+
+  /**
+   * Creates a new sink, which sends lines that wait
+   * {@value #DEFAULT_LINGER_MS} milliseconds.
+   *
+   * @param client Kinesis client
+   * @param streamName Kinesis stream name
+   * @param maxInFlight maximum number of requests in flight
+   */
+  public KinesisLogSink(Client client, String streamName, int maxInFlight) {
+    this(client, streamName, maxInFlight, DEFAULT_LINGER_MS);
+  }
+
+  /**
+   * Creates a new sink.
+   *
+   * @param client Kinesis client
+   * @param streamName Kinesis stream name
+   * @param maxInFlight maximum number of requests in flight
+   * @param lingerMillis how long a line may wait for its request to fill
+   * before the request is sent anyway, in milliseconds, or 0 to only send
+   * full requests
+   */
+  public KinesisLogSink(Client client, String streamName, int maxInFlight, long lingerMillis) {
+    this.client = client;
+    this.streamName = streamName;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.senders = Executors.newFixedThreadPool(maxInFlight, r -> {
+      Thread t = new Thread(r, "kinesis-sender");
+      t.setDaemon(true);
+      return t;
+    });
+    this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+    if (lingerMillis > 0L) {
+      lingerTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "kinesis-linger");
+        t.setDaemon(true);
+        return t;
+      });
+      // Checking twice per linger keeps lines from waiting much longer
+      long period = Math.max(1L, lingerMillis / 2L);
+      lingerTimer.scheduleWithFixedDelay(this::sendLingering, period, period,
+                                         TimeUnit.MILLISECONDS);
+    } else {
+      lingerTimer = null;
+    }
+  }
+
+  @Override
+  public synchronized void write(byte[] line, int offset, int length)
+    throws IOException, InterruptedException {
+
+    String partitionKey = Long.toHexString(nextPartitionKey++);
+    int recordBytes = length + partitionKey.length();
+    if (recordBytes > MAX_BYTES_PER_RECORD) {
+      throw new IOException("Log line of " + length + " bytes is too large for Kinesis");
+    }
+    if (batch.size() == MAX_RECORDS_PER_REQUEST ||
+        batchBytes + recordBytes > MAX_BYTES_PER_REQUEST) {
+      sendBatch();
+    }
+
+    if (batch.isEmpty()) {
+      batchStart = System.nanoTime();
+    }
+    ByteBuffer data = ByteBuffer.allocate(length);
+    data.put(line, offset, length).flip();
+    batch.add(new PutRecordsRequestEntry().withPartitionKey(partitionKey).withData(data));
+    batchBytes += recordBytes;
+  }
+
+  /**
+   * Sends the batch if its first line has waited long enough.
+   */
+  private synchronized void sendLingering() {
+    if (batch.isEmpty() || System.nanoTime() - batchStart < lingerNanos) {
+      return;
+    }
+    try {
+      sendBatch();
+    } catch (InterruptedException e) {
+      // The batch is kept for the next write or close()
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void sendBatch() throws InterruptedException {
+    // Wait before taking the batch, so that an interrupted wait keeps it
+    inFlight.acquire();
+    List<PutRecordsRequestEntry> entries = batch;
+    batch = new ArrayList<>();
+    batchBytes = 0;
+    try {
+      senders.execute(() -> {
+        try {
+          send(entries);
+        } finally {
+          inFlight.release();
+        }
+      });
+    } catch (RuntimeException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Puts entries, retrying those that fail, until all succeed or the
+   * attempts run out.
+   */
+  private void send(List<PutRecordsRequestEntry> entries) {
+    long backoff = INITIAL_BACKOFF_MS;
+    for (int attempt = 1; ; attempt++) {
+      List<PutRecordsRequestEntry> failed = new ArrayList<>();
+      long start = System.nanoTime();
+      try {
+        PutRecordsResult result = client.putRecords(new PutRecordsRequest()
+                                                    .withStreamName(streamName)
+                                                    .withRecords(entries));
+        putLatency.record((System.nanoTime() - start) / 1000L);
+        List<PutRecordsResultEntry> resultEntries = result.getRecords();
+        for (int i = 0; i < entries.size(); i++) {
+          if (resultEntries.get(i).getErrorCode() != null) {
+            failed.add(entries.get(i));
+          }
+        }
+      } catch (RuntimeException e) {
+        // Throttled or unreachable; retry the whole request
+        failed = entries;
+      }
+      numSent.mark(entries.size() - failed.size());
+      if (failed.isEmpty()) {
+        return;
+      }
+      if (attempt == MAX_ATTEMPTS) {
+        numFailed.addAndGet(failed.size());
+        return;
+      }
+
+      numRetried.addAndGet(failed.size());
+      for (PutRecordsRequestEntry entry : failed) {
+        entry.getData().rewind();
+      }
+      entries = failed;
+      try {
+        Thread.sleep(backoff);
+      } catch (InterruptedException e) {
+        numFailed.addAndGet(failed.size());
+        Thread.currentThread().interrupt();
+        return;
+      }
+      backoff = Math.min(backoff * 2L, MAX_BACKOFF_MS);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (lingerTimer != null) {
+        lingerTimer.shutdown();
+        lingerTimer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+      synchronized (this) {
+        if (!batch.isEmpty()) {
+          sendBatch();
+        }
+      }
+      senders.shutdown();
+      senders.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while sending remaining log lines", e);
+    }
+  }
+
+  /**
+   * Gets the number of lines put successfully.
+   *
+   * @return number of lines sent
+   */
+  public long getNumSent() {
+    return numSent.getCount();
+  }
+
+  /**
+   * Gets the number of times lines were retried after failing to be put.
+   *
+   * @return number of retries
+   */
+  public long getNumRetried() {
+    return numRetried.get();
+  }
+
+  /**
+   * Gets the number of lines that could not be put after all attempts.
+   *
+   * @return number of lines failed
+   */
+  public long getNumFailed() {
+    return numFailed.get();
+  }
+
+  /**
+   * Registers the rate of lines sent, the numbers retried and failed, and
+   * the latency of successful PutRecords calls, in microseconds, with a
+   * metric registry.
+   *
+   * @param registry metric registry
+   */
+  public void registerMetrics(MetricRegistry registry) {
+    registry.register("kinesis.sent", numSent);
+    registry.register("kinesis.retried", (Gauge<Long>) this::getNumRetried);
+    registry.register("kinesis.failed", (Gauge<Long>) this::getNumFailed);
+    LogMetrics.register(registry, "kinesis.put.us", putLatency);
+  }
+}
@@ -0,0 +1,335 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative values, such as latencies, in the style of
+ * HdrHistogram. Values are counted in buckets whose width grows with their
+ * magnitude, so that every value is kept to within 1% while the whole range
+ * of longs fits in a fixed number of buckets. Unlike a sampling reservoir,
+ * the histogram counts every value, so that high percentiles are accurate,
+ * and histograms from several sources may be added together. Negative
+ * values are counted as 0.
+ *
+ * Buckets are allocated on the first value, and only non-empty buckets are
+ * serialized, so that empty and sparse histograms are cheap to ship. The
+ * histogram is thread-safe, and may back a metrics Histogram.
+ */
+class LatencyHistogram implements Reservoir, Serializable {
+
+  private static final int SUB_BUCKET_BITS = 8;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+  private static final int LENGTH = index(Long.MAX_VALUE) + 1;
+
+  private transient long[] counts;
+  private transient long totalCount;
+  private transient long min;
+  private transient long max;
+  private transient double sum;
+
+  LatencyHistogram() {
+    reset();
+  }
+
+  /**
+   * Gets the bucket for a value. Values below the sub-bucket count have
+   * buckets of their own; above that, each doubling of magnitude is split
+   * into half as many buckets, each twice as wide as the last set.
+   */
+  private static int index(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+    return magnitude * SUB_BUCKET_HALF_COUNT + (int) (value >>> magnitude);
+  }
+
+  /**
+   * Gets the highest value counted in a bucket.
+   */
+  private static long highestValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int magnitude = index / SUB_BUCKET_HALF_COUNT - 1;
+    long subBucket = index - magnitude * SUB_BUCKET_HALF_COUNT;
+    // Wraps around to Long.MAX_VALUE for the last bucket
+    return ((subBucket + 1L) << magnitude) - 1L;
+  }
+
+  /**
+   * Counts a value.
+   *
+   * @param value value
+   */
+  void record(long value) {
+    record(value, 1L);
+  }
+
+  /**
+   * Counts a value several times.
+   *
+   * @param value value
+   * @param count number of times to count the value
+   */
+  synchronized void record(long value, long count) {
+    if (count <= 0L) {
+      return;
+    }
+    value = Math.max(0L, value);
+    if (counts == null) {
+      counts = new long[LENGTH];
+    }
+    counts[index(value)] += count;
+    totalCount += count;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+    sum += (double) value * count;
+  }
+
+  /**
+   * Adds the values in another histogram to this one, shifted by an offset.
+   * The shifted values are those of the other histogram's buckets, so they
+   * are as accurate as the buckets.
+   *
+   * @param other histogram to add
+   * @param offset amount to add to each value
+   */
+  void add(LatencyHistogram other, long offset) {
+    LatencyHistogram copy = other.copy();
+    if (copy.counts == null) {
+      return;
+    }
+    synchronized (this) {
+      if (counts == null) {
+        counts = new long[LENGTH];
+      }
+      for (int i = 0; i < LENGTH; i++) {
+        if (copy.counts[i] != 0L) {
+          int index = offset == 0L ? i : index(Math.max(0L, highestValue(i) + offset));
+          counts[index] += copy.counts[i];
+        }
+      }
+      totalCount += copy.totalCount;
+      min = Math.min(min, Math.max(0L, copy.min + offset));
+      max = Math.max(max, Math.max(0L, copy.max + offset));
+      sum += copy.sum + (double) offset * copy.totalCount;
+    }
+  }
+
+  /**
+   * Removes all values.
+   */
+  synchronized void reset() {
+    counts = null;
+    totalCount = 0L;
+    min = Long.MAX_VALUE;
+    max = 0L;
+    sum = 0.0;
+  }
+
+  synchronized LatencyHistogram copy() {
+    LatencyHistogram copy = new LatencyHistogram();
+    copy.counts = counts == null ? null : counts.clone();
+    copy.totalCount = totalCount;
+    copy.min = min;
+    copy.max = max;
+    copy.sum = sum;
+    return copy;
+  }
+
+  synchronized long getCount() {
+    return totalCount;
+  }
+
+  synchronized long getMin() {
+    return totalCount == 0L ? 0L : min;
+  }
+
+  synchronized long getMax() {
+    return max;
+  }
+
+  synchronized double getMean() {
+    return totalCount == 0L ? 0.0 : sum / totalCount;
+  }
+
+  /**
+   * Gets the value at a percentile, that is, the largest value at or below
+   * which the given percentage of values fall.
+   *
+   * @param percentile percentile, from 0 to 100
+   * @return value at percentile, or 0 if there are no values
+   */
+  synchronized long getValueAtPercentile(double percentile) {
+    if (totalCount == 0L) {
+      return 0L;
+    }
+    long target = Math.max(1L, (long) Math.ceil(percentile / 100.0 * totalCount));
+    long seen = 0L;
+    for (int i = 0; i < LENGTH; i++) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Math.min(highestValue(i), max);
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public int size() {
+    return (int) Math.min(getCount(), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void update(long value) {
+    record(value);
+  }
+
+  @Override
+  public Snapshot getSnapshot() {
+    return new HistogramSnapshot(copy());
+  }
+
+  private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeLong(totalCount);
+    out.writeLong(min);
+    out.writeLong(max);
+    out.writeDouble(sum);
+    int numBuckets = 0;
+    for (int i = 0; counts != null && i < LENGTH; i++) {
+      if (counts[i] != 0L) {
+        numBuckets++;
+      }
+    }
+    out.writeInt(numBuckets);
+    for (int i = 0; counts != null && i < LENGTH; i++) {
+      if (counts[i] != 0L) {
+        out.writeShort(i);
+        out.writeLong(counts[i]);
+      }
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    totalCount = in.readLong();
+    min = in.readLong();
+    max = in.readLong();
+    sum = in.readDouble();
+    int numBuckets = in.readInt();
+    if (numBuckets > 0) {
+      counts = new long[LENGTH];
+      for (int i = 0; i < numBuckets; i++) {
+        counts[in.readUnsignedShort()] = in.readLong();
+      }
+    }
+  }
+
+  /**
+   * A snapshot for metrics reporters. Its values are one per non-empty
+   * bucket, not one per value counted.
+   */
+  private static class HistogramSnapshot extends Snapshot {
+
+    private final LatencyHistogram histogram;
+
+    private HistogramSnapshot(LatencyHistogram histogram) {
+      this.histogram = histogram;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+      return histogram.getValueAtPercentile(quantile * 100.0);
+    }
+
+    @Override
+    public long[] getValues() {
+      if (histogram.counts == null) {
+        return new long[0];
+      }
+      long[] values = new long[LENGTH];
+      int numValues = 0;
+      for (int i = 0; i < LENGTH; i++) {
+        if (histogram.counts[i] != 0L) {
+          values[numValues++] = Math.min(highestValue(i), histogram.max);
+        }
+      }
+      return Arrays.copyOf(values, numValues);
+    }
+
+    @Override
+    public int size() {
+      return histogram.size();
+    }
+
+    @Override
+    public long getMax() {
+      return histogram.getMax();
+    }
+
+    @Override
+    public double getMean() {
+      return histogram.getMean();
+    }
+
+    @Override
+    public long getMin() {
+      return histogram.getMin();
+    }
+
+    @Override
+    public double getStdDev() {
+      if (histogram.totalCount <= 1L) {
+        return 0.0;
+      }
+      double mean = histogram.getMean();
+      double sumOfSquares = 0.0;
+      for (int i = 0; i < LENGTH; i++) {
+        if (histogram.counts[i] != 0L) {
+          double deviation = Math.min(highestValue(i), histogram.max) - mean;
+          sumOfSquares += deviation * deviation * histogram.counts[i];
+        }
+      }
+      return Math.sqrt(sumOfSquares / (histogram.totalCount - 1L));
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+      try (PrintWriter out =
+           new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+        for (long value : getValues()) {
+          out.printf("%d%n", value);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.Serializable;
+import java.time.Instant;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.spark.streaming.Duration;
+import org.apache.spark.streaming.api.java.JavaDStream;
+import org.apache.spark.streaming.api.java.JavaPairDStream;
+import scala.Tuple2;
+
+/**
+ * Keeps request and byte totals over a sliding window, for each combination
+ * of resource, status and user agent category. Each slide adds the totals
+ * for the batches entering the window and subtracts those for the batches
+ * leaving it, so its cost depends on the batch size rather than the window
+ * length. Windowed totals are checkpointed, so the streaming context must
+ * have a checkpoint directory.
+ *
+ * Each slide writes one small text file of totals, one line per key, of the
+ * form "window end, resource, status, category, requests, bytes" separated
+ * by tabs. The window end is an ISO-8601 instant.
+ */
+class LogAggregator implements Serializable {
+
+  static final String WINDOW_PROPERTY = "spark.mh2c.aggregate.window";
+  static final String SLIDE_PROPERTY = "spark.mh2c.aggregate.slide";
+  static final String CHECKPOINT_DIR_PROPERTY = "spark.mh2c.checkpoint.dir";
+  static final int DEFAULT_WINDOW = 300000;
+
+  private final Duration window;
+  private final Duration slide;
+
+  /**
+   * Creates a new aggregator.
+   *
+   * @param window window length, in milliseconds
+   * @param slide interval between windows, in milliseconds
+   * @param batchInterval streaming batch interval, in milliseconds
+   * @throws IllegalArgumentException if the window or slide is not a
+   * multiple of the batch interval, or the window is shorter than the slide
+   */
+  LogAggregator(long window, long slide, long batchInterval) {
+    if (slide <= 0L || slide % batchInterval != 0L) {
+      throw new IllegalArgumentException(SLIDE_PROPERTY + " of " + slide + " ms must be a " +
+                                         "multiple of the batch interval of " +
+                                         batchInterval + " ms");
+    }
+    if (window % batchInterval != 0L) {
+      throw new IllegalArgumentException(WINDOW_PROPERTY + " of " + window + " ms must be a " +
+                                         "multiple of the batch interval of " +
+                                         batchInterval + " ms");
+    }
+    if (window < slide) {
+      throw new IllegalArgumentException(WINDOW_PROPERTY + " of " + window + " ms cannot " +
+                                         "slide every " + slide + " ms");
+    }
+    this.window = new Duration(window);
+    this.slide = new Duration(slide);
+  }
+
+  /**
+   * Gets the default window for a batch interval: {@value #DEFAULT_WINDOW}
+   * milliseconds, rounded up to a multiple of the interval.
+   *
+   * @param batchInterval streaming batch interval, in milliseconds
+   * @return default window, in milliseconds
+   */
+  static long defaultWindow(long batchInterval) {
+    return (DEFAULT_WINDOW + batchInterval - 1L) / batchInterval * batchInterval;
+  }
+
+  /**
+   * Totals records over the window.
+   *
+   * @param records records
+   * @return windowed totals by key
+   */
+  JavaPairDStream<String, Totals> aggregate(JavaDStream<ApacheLogRecord> records) {
+    int numPartitions = records.context().sparkContext().defaultParallelism();
+    return records
+      .mapToPair(record -> new Tuple2<>(key(record), new Totals(1L, record.getBytes())))
+      // Drop keys once they leave the window, so that state stays small
+      .reduceByKeyAndWindow(Totals::plus, Totals::minus, window, slide, numPartitions,
+                            totals -> !totals._2().isEmpty());
+  }
+
+  /**
+   * Writes windowed totals as one text file per slide.
+   *
+   * @param totals windowed totals by key
+   * @param prefix prefix for output directories
+   */
+  void save(JavaPairDStream<String, Totals> totals, String prefix) {
+    totals
+      // Lead with the window end, so that lines still say which window they
+      // total once files are merged
+      .transformToPair((rdd, time) -> rdd.coalesce(1).mapToPair(
+        entry -> new Tuple2<>(Instant.ofEpochMilli(time.milliseconds()) + "\t" + entry._1(),
+                              entry._2())))
+      .saveAsHadoopFiles(prefix, "txt", Text.class, Text.class, TextOutputFormat.class);
+  }
+
+  /**
+   * Gets the aggregation key for a record, made of its resource, status and
+   * user agent category.
+   */
+  static String key(ApacheLogRecord record) {
+    return record.getResource() + "\t" + record.getStatus() + "\t" + record.getUserAgent();
+  }
+
+  /**
+   * Request and byte totals. Instances are immutable.
+   */
+  static final class Totals implements Serializable {
+
+    private final long requests;
+    private final long bytes;
+
+    Totals(long requests, long bytes) {
+      this.requests = requests;
+      this.bytes = bytes;
+    }
+
+    long getRequests() {
+      return requests;
+    }
+
+    long getBytes() {
+      return bytes;
+    }
+
+    Totals plus(Totals other) {
+      return new Totals(requests + other.requests, bytes + other.bytes);
+    }
+
+    Totals minus(Totals other) {
+      return new Totals(requests - other.requests, bytes - other.bytes);
+    }
+
+    boolean isEmpty() {
+      return requests == 0L;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Totals)) {
+        return false;
+      }
+      Totals totals = (Totals) other;
+      return requests == totals.requests && bytes == totals.bytes;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(requests) * 31 + Long.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+      return requests + "\t" + bytes;
+    }
+  }
+}
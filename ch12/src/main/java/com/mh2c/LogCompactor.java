@@ -0,0 +1,370 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges the many small directories that a streaming job writes, one per
+ * batch, into a few large files, in the background on the driver. Finished
+ * batch directories of text are merged, oldest first, into directories of
+ * files of about {@value RollingLogWriter#ROLL_SIZE_PROPERTY} bytes, once
+ * there are enough of them to fill a file or the oldest is
+ * {@value RollingLogWriter#ROLL_INTERVAL_PROPERTY} milliseconds old. A
+ * merged directory is named for the times of its first and last batches.
+ * Merging keeps each line but loses which batch it came from, so only
+ * outputs whose lines carry their own times, like the records, windowed
+ * totals and visitor sketches, should be merged.
+ *
+ * Merged files are written to a hidden directory and renamed into place
+ * before the batch directories are deleted. Batch directories left behind
+ * by a failure are deleted on the next pass, rather than merged again,
+ * since their times fall within an existing merged directory.
+ *
+ * The number of files making up each output, and their average size, are
+ * kept as metrics.
+ */
+class LogCompactor implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LogCompactor.class);
+
+  private static final long MAX_PASS_INTERVAL = 60000L;
+
+  /**
+   * A set of batch directories and where to merge them.
+   */
+  static class Source {
+    private final String name;
+    private final Path inputDir;
+    private final Pattern inputPattern;
+    private final Path outputDir;
+    private final String outputPrefix;
+    private final String outputSuffix;
+    private final Pattern outputPattern;
+    private volatile long files;
+    private volatile long bytes;
+
+    /**
+     * Creates a new source.
+     *
+     * @param name name for metrics
+     * @param inputDir directory holding batch directories
+     * @param inputPrefix prefix of batch directory names, before the time
+     * @param inputSuffix suffix of batch directory names, after the time
+     * @param outputDir directory for merged directories
+     * @param outputPrefix prefix of merged directory names
+     * @param outputSuffix suffix of merged directory names
+     */
+    Source(String name, Path inputDir, String inputPrefix, String inputSuffix,
+           Path outputDir, String outputPrefix, String outputSuffix) {
+      this.name = name;
+      this.inputDir = inputDir;
+      this.inputPattern = Pattern.compile(Pattern.quote(inputPrefix) + "(\\d+)" +
+                                          Pattern.quote(inputSuffix));
+      this.outputDir = outputDir;
+      this.outputPrefix = outputPrefix;
+      this.outputSuffix = outputSuffix;
+      this.outputPattern = Pattern.compile(Pattern.quote(outputPrefix) + "(\\d+)-(\\d+)" +
+                                           Pattern.quote(outputSuffix));
+    }
+
+    /**
+     * Gets the directories written by
+     * {@link org.apache.spark.streaming.api.java.JavaPairDStream#saveAsHadoopFiles}
+     * with a prefix and suffix.
+     */
+    static Source forHadoopFiles(String name, String prefix, String suffix) {
+      Path path = new Path(prefix);
+      String namePrefix = path.getName() + "-";
+      return new Source(name, path.getParent(), namePrefix, "." + suffix,
+                        path.getParent(), namePrefix, "." + suffix);
+    }
+
+    /**
+     * Gets the segments written by a {@link RollingLogWriter}.
+     */
+    static Source forRollingLogWriter(String name, String outputDir) {
+      return new Source(name, new Path(outputDir, RollingLogWriter.SEGMENTS_DIR), "", "",
+                        new Path(outputDir), "logs-", "");
+    }
+  }
+
+  /**
+   * A finished batch directory.
+   */
+  static class Batch {
+    final long time;
+    final Path path;
+    final long size;
+
+    Batch(long time, Path path, long size) {
+      this.time = time;
+      this.path = path;
+      this.size = size;
+    }
+  }
+
+  private final JavaSparkContext sc;
+  private final long rollSize;
+  private final long rollInterval;
+  private final List<Source> sources = new ArrayList<>();
+  private ScheduledExecutorService executor;
+
+  /**
+   * Creates a new compactor.
+   *
+   * @param sc Spark context
+   * @param rollSize target size of merged files, in bytes
+   * @param rollInterval age at which batches are merged regardless of size,
+   * in milliseconds, or 0 to not merge at all
+   */
+  LogCompactor(JavaSparkContext sc, long rollSize, long rollInterval) {
+    this.sc = sc;
+    this.rollSize = rollSize;
+    this.rollInterval = rollInterval;
+  }
+
+  /**
+   * Creates a compactor for the outputs of {@link LogProcessor}.
+   *
+   * @param sc Spark context
+   * @param hadoopDir directory prefix in Hadoop where files are written
+   * @return compactor
+   */
+  static LogCompactor forProcessor(JavaSparkContext sc, String hadoopDir) {
+    SparkConf conf = sc.getConf();
+    LogCompactor compactor =
+      new LogCompactor(sc, conf.getLong(RollingLogWriter.ROLL_SIZE_PROPERTY,
+                                        RollingLogWriter.DEFAULT_ROLL_SIZE),
+                       conf.getLong(RollingLogWriter.ROLL_INTERVAL_PROPERTY,
+                                    RollingLogWriter.DEFAULT_ROLL_INTERVAL));
+    compactor.addSource(Source.forRollingLogWriter("records", hadoopDir));
+    compactor.addSource(Source.forHadoopFiles("aggregates", hadoopDir + "-aggregates", "txt"));
+    compactor.addSource(Source.forHadoopFiles("visitors", hadoopDir + "-visitors", "txt"));
+    return compactor;
+  }
+
+  void addSource(Source source) {
+    sources.add(source);
+  }
+
+  /**
+   * Registers the file count and average file size of each source.
+   *
+   * @param registry metric registry
+   */
+  void registerMetrics(MetricRegistry registry) {
+    for (Source source : sources) {
+      registry.register("output." + source.name + ".files", (Gauge<Long>) () -> source.files);
+      registry.register("output." + source.name + ".avg-bytes",
+                        (Gauge<Long>) () -> source.files == 0L ? 0L :
+                        source.bytes / source.files);
+    }
+  }
+
+  /**
+   * Starts merging in the background, unless merging is off.
+   *
+   * @return this compactor, which stops merging when closed
+   */
+  LogCompactor start() {
+    if (rollInterval > 0L) {
+      long period = Math.min(rollInterval, MAX_PASS_INTERVAL);
+      executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "log-compactor");
+        thread.setDaemon(true);
+        return thread;
+      });
+      executor.scheduleWithFixedDelay(this::compactAll, period, period, TimeUnit.MILLISECONDS);
+    }
+    return this;
+  }
+
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  private void compactAll() {
+    for (Source source : sources) {
+      try {
+        compact(source, System.currentTimeMillis());
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Failed to compact " + source.name + " output", e);
+      }
+    }
+  }
+
+  /**
+   * Makes one pass over a source, merging what is ready.
+   *
+   * @param source source
+   * @param now current time, in milliseconds since the epoch
+   * @throws IOException if the file system cannot be read or written
+   */
+  void compact(Source source, long now) throws IOException {
+    FileSystem fs = source.outputDir.getFileSystem(sc.hadoopConfiguration());
+    List<long[]> merged = new ArrayList<>();
+    for (FileStatus status : list(fs, source.outputDir)) {
+      Matcher matcher = source.outputPattern.matcher(status.getPath().getName());
+      if (matcher.matches()) {
+        merged.add(new long[] { Long.parseLong(matcher.group(1)),
+                                Long.parseLong(matcher.group(2)) });
+      }
+    }
+
+    List<Batch> batches = new ArrayList<>();
+    for (FileStatus status : list(fs, source.inputDir)) {
+      Matcher matcher = source.inputPattern.matcher(status.getPath().getName());
+      if (!matcher.matches() ||
+          !fs.exists(new Path(status.getPath(), RollingLogWriter.SUCCESS_MARKER))) {
+        continue;
+      }
+      long time = Long.parseLong(matcher.group(1));
+      if (merged.stream().anyMatch(range -> range[0] <= time && time <= range[1])) {
+        // Already merged before a failure
+        fs.delete(status.getPath(), true);
+      } else {
+        batches.add(new Batch(time, status.getPath(),
+                              fs.getContentSummary(status.getPath()).getLength()));
+      }
+    }
+
+    for (List<Batch> run : plan(batches, rollSize, rollInterval, now)) {
+      merge(fs, source, run);
+    }
+    updateMetrics(fs, source);
+  }
+
+  /**
+   * Groups batches, oldest first, into runs to merge. A run is closed once
+   * it holds the roll size; the last, partial run is only merged if its
+   * oldest batch is older than the roll interval.
+   *
+   * @param batches finished batches, in any order
+   * @param rollSize target size of merged files, in bytes
+   * @param rollInterval age at which batches are merged regardless of size
+   * @param now current time, in milliseconds since the epoch
+   * @return runs to merge, oldest first
+   */
+  static List<List<Batch>> plan(List<Batch> batches, long rollSize, long rollInterval,
+                                long now) {
+    List<Batch> sorted = new ArrayList<>(batches);
+    sorted.sort(Comparator.comparingLong(batch -> batch.time));
+    List<List<Batch>> runs = new ArrayList<>();
+    List<Batch> run = new ArrayList<>();
+    long runSize = 0L;
+    for (Batch batch : sorted) {
+      run.add(batch);
+      runSize += batch.size;
+      if (runSize >= rollSize) {
+        runs.add(run);
+        run = new ArrayList<>();
+        runSize = 0L;
+      }
+    }
+    if (!run.isEmpty() && run.get(0).time <= now - rollInterval) {
+      runs.add(run);
+    }
+    return runs;
+  }
+
+  /**
+   * Merges a run of batches into files of about the roll size, then deletes
+   * the batches.
+   */
+  private void merge(FileSystem fs, Source source, List<Batch> run) throws IOException {
+    String name = source.outputPrefix + run.get(0).time + "-" + run.get(run.size() - 1).time +
+      source.outputSuffix;
+    Path target = new Path(source.outputDir, name);
+    Path temp = new Path(source.outputDir, "_compacting-" + name);
+    fs.delete(temp, true);
+
+    long size = run.stream().mapToLong(batch -> batch.size).sum();
+    int numFiles = (int) Math.max(1L, (size + rollSize - 1L) / rollSize);
+    String inputs = run.stream().map(batch -> batch.path.toString())
+      .collect(Collectors.joining(","));
+    sc.sc().setJobDescription("Compact " + source.name + " into " + name);
+    sc.textFile(inputs).coalesce(numFiles).saveAsTextFile(temp.toString());
+
+    if (!fs.rename(temp, target)) {
+      throw new IOException("Failed to move " + temp + " to " + target);
+    }
+    for (Batch batch : run) {
+      fs.delete(batch.path, true);
+    }
+  }
+
+  /**
+   * Counts the data files in a source's batch and merged directories.
+   */
+  private static void updateMetrics(FileSystem fs, Source source) throws IOException {
+    long files = 0L;
+    long bytes = 0L;
+    List<FileStatus> dirs = new ArrayList<>();
+    for (FileStatus status : list(fs, source.inputDir)) {
+      if (source.inputPattern.matcher(status.getPath().getName()).matches()) {
+        dirs.add(status);
+      }
+    }
+    for (FileStatus status : list(fs, source.outputDir)) {
+      if (source.outputPattern.matcher(status.getPath().getName()).matches()) {
+        dirs.add(status);
+      }
+    }
+    for (FileStatus dir : dirs) {
+      RemoteIterator<LocatedFileStatus> iterator = fs.listFiles(dir.getPath(), true);
+      while (iterator.hasNext()) {
+        LocatedFileStatus file = iterator.next();
+        String name = file.getPath().getName();
+        if (!name.startsWith("_") && !name.startsWith(".")) {
+          files++;
+          bytes += file.getLen();
+        }
+      }
+    }
+    source.files = files;
+    source.bytes = bytes;
+  }
+
+  private static FileStatus[] list(FileSystem fs, Path dir) throws IOException {
+    return fs.exists(dir) ? fs.listStatus(dir) : new FileStatus[0];
+  }
+}
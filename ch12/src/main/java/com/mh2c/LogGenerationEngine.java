@@ -0,0 +1,312 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.javafaker.Faker;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.math3.distribution.EnumeratedDistribution;
+import org.apache.commons.math3.util.Pair;
+
+/**
+ * A fast generator for the same fake Apache access log lines as
+ * {@link LogGenerator}, for load tests. IP addresses and referers are drawn
+ * from pools made up front, timestamp text is reused within each second, and
+ * lines are assembled as bytes in reusable buffers and handed to a
+ * {@link LogSink} in blocks. Generation is spread across threads, each with
+ * its own random number generator derived from one seed, so that the lines
+ * generated apart from their timestamps depend only on the seed and thread
+ * count.
+ */
+public class LogGenerationEngine {
+
+  static final int DEFAULT_POOL_SIZE = 10000;
+
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int PERMITS_PER_ACQUIRE = 64;
+
+  private static final byte[] AFTER_GENERATED_AT = bytes(" - [");
+  private static final byte[] AFTER_TIMESTAMP = bytes("] \"");
+  private static final byte[] AFTER_RESOURCE = bytes(" HTTP/1.0\" ");
+  private static final byte[] BEFORE_REFERER = bytes(" \"");
+  private static final byte[] AFTER_REFERER = bytes("\" \"");
+
+  /**
+   * Values chosen with fixed probabilities.
+   */
+  private static final class WeightedChoice {
+    private final byte[][] values;
+    private final double[] cumulative;
+
+    private WeightedChoice(EnumeratedDistribution<String> distribution) {
+      List<Pair<String, Double>> pmf = distribution.getPmf();
+      values = new byte[pmf.size()][];
+      cumulative = new double[pmf.size()];
+      double total = 0.0;
+      for (int i = 0; i < values.length; i++) {
+        values[i] = bytes(pmf.get(i).getKey());
+        total += pmf.get(i).getValue();
+        cumulative[i] = total;
+      }
+    }
+
+    private int maxLength() {
+      int maxLength = 0;
+      for (byte[] value : values) {
+        maxLength = Math.max(maxLength, value.length);
+      }
+      return maxLength;
+    }
+
+    private byte[] sample(Random random) {
+      double r = random.nextDouble() * cumulative[cumulative.length - 1];
+      for (int i = 0; i < cumulative.length - 1; i++) {
+        if (r < cumulative[i]) {
+          return values[i];
+        }
+      }
+      return values[values.length - 1];
+    }
+  }
+
+  private final long seed;
+  private final byte[][] ipAddresses;
+  private final byte[][] referers;
+  private final WeightedChoice methods = new WeightedChoice(LogGenerator.METHODS);
+  private final WeightedChoice resources = new WeightedChoice(LogGenerator.RESOURCES);
+  private final WeightedChoice statuses = new WeightedChoice(LogGenerator.RESPONSES);
+  private final WeightedChoice userAgents = new WeightedChoice(LogGenerator.USER_AGENTS);
+  private final int maxLineLength;
+  private final Meter generated = new Meter();
+
+  /**
+   * Creates a new engine.
+   *
+   * @param seed random seed
+   * @param poolSize number of distinct IP addresses and referers
+   */
+  public LogGenerationEngine(long seed, int poolSize) {
+    this.seed = seed;
+    Faker faker = new Faker(new Random(seed));
+    ipAddresses = new byte[poolSize][];
+    referers = new byte[poolSize][];
+    int maxIpAddressLength = 0;
+    int maxRefererLength = 0;
+    for (int i = 0; i < poolSize; i++) {
+      ipAddresses[i] = bytes(faker.internet().privateIpV4Address());
+      referers[i] = bytes(faker.internet().url());
+      maxIpAddressLength = Math.max(maxIpAddressLength, ipAddresses[i].length);
+      maxRefererLength = Math.max(maxRefererLength, referers[i].length);
+    }
+    // Allow plenty of room for the timestamps and byte count
+    maxLineLength = maxIpAddressLength + maxRefererLength + methods.maxLength() +
+      resources.maxLength() + statuses.maxLength() + userAgents.maxLength() + 128;
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Generates log lines on several threads and writes them to a sink, which
+   * is not closed.
+   *
+   * @param sink sink for log lines
+   * @param numThreads number of generating threads
+   * @param recsPerSecond total number of records to write each second, or 0
+   * for no limit
+   * @param numRecords total number of records to write
+   * @throws IOException if lines cannot be written
+   * @throws InterruptedException if generation is interrupted
+   */
+  public void generate(LogSink sink, int numThreads, int recsPerSecond, long numRecords)
+    throws IOException, InterruptedException {
+
+    TokenBucket rateLimiter = recsPerSecond > 0 ?
+      new TokenBucket(recsPerSecond, Math.max(PERMITS_PER_ACQUIRE, recsPerSecond / 10.0)) :
+      null;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        long threadRecords = numRecords / numThreads + (i < numRecords % numThreads ? 1 : 0);
+        Random random = new Random(seed + 0x9e3779b97f4a7c15L * (i + 1));
+        futures.add(executor.submit(() -> {
+          generate(sink, rateLimiter, random, threadRecords);
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof InterruptedException) {
+        throw (InterruptedException) cause;
+      }
+      throw new IllegalStateException("Log generation failed", cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void generate(LogSink sink, TokenBucket rateLimiter, Random random, long numRecords)
+    throws IOException, InterruptedException {
+
+    byte[] block = new byte[Math.max(BLOCK_SIZE, maxLineLength)];
+    int pos = 0;
+    int blockLines = 0;
+    long second = Long.MIN_VALUE;
+    byte[] timestamp = null;
+    for (long i = 0; i < numRecords; i++) {
+      if (rateLimiter != null && i % PERMITS_PER_ACQUIRE == 0) {
+        rateLimiter.acquire((int) Math.min(PERMITS_PER_ACQUIRE, numRecords - i));
+      }
+      long now = System.currentTimeMillis();
+      if (now / 1000L != second) {
+        second = now / 1000L;
+        timestamp = bytes(ApacheLogRecord.TIMESTAMP_FORMATTER.format(
+          ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneId.systemDefault())));
+      }
+      if (pos + maxLineLength > block.length) {
+        sink.writeLines(block, 0, pos);
+        generated.mark(blockLines);
+        pos = 0;
+        blockLines = 0;
+      }
+
+      pos = append(block, pos, ipAddresses[random.nextInt(ipAddresses.length)]);
+      // Note the generation time for measuring latency, in the identity field
+      block[pos++] = ' ';
+      pos = appendDigits(block, pos, now);
+      pos = append(block, pos, AFTER_GENERATED_AT);
+      pos = append(block, pos, timestamp);
+      pos = append(block, pos, AFTER_TIMESTAMP);
+      pos = append(block, pos, methods.sample(random));
+      block[pos++] = ' ';
+      pos = append(block, pos, resources.sample(random));
+      pos = append(block, pos, AFTER_RESOURCE);
+      pos = append(block, pos, statuses.sample(random));
+      block[pos++] = ' ';
+      pos = appendDigits(block, pos, random.nextInt(10000));
+      pos = append(block, pos, BEFORE_REFERER);
+      pos = append(block, pos, referers[random.nextInt(referers.length)]);
+      pos = append(block, pos, AFTER_REFERER);
+      pos = append(block, pos, userAgents.sample(random));
+      block[pos++] = '"';
+      block[pos++] = '\n';
+      blockLines++;
+    }
+    if (pos > 0) {
+      sink.writeLines(block, 0, pos);
+      generated.mark(blockLines);
+    }
+  }
+
+  /**
+   * Registers the rate of lines generated with a metric registry.
+   *
+   * @param registry metric registry
+   */
+  public void registerMetrics(MetricRegistry registry) {
+    registry.register("generator.lines", generated);
+  }
+
+  private static int append(byte[] block, int pos, byte[] value) {
+    System.arraycopy(value, 0, block, pos, value.length);
+    return pos + value.length;
+  }
+
+  private static int appendDigits(byte[] block, int pos, long value) {
+    int numDigits = 1;
+    for (long v = value; v >= 10L; v /= 10L) {
+      numDigits++;
+    }
+    for (int i = pos + numDigits - 1; i >= pos; i--) {
+      block[i] = (byte) ('0' + value % 10L);
+      value /= 10L;
+    }
+    return pos + numDigits;
+  }
+
+  /**
+   * Creates a sink from a description: "stdout", "file:directory" or
+   * "kinesis:stream".
+   */
+  private static LogSink createSink(String description) throws IOException {
+    if (description.equals("stdout")) {
+      return new OutputStreamLogSink(new FileOutputStream(FileDescriptor.out));
+    }
+    if (description.startsWith("file:")) {
+      return new RotatingFileLogSink(Paths.get(description.substring(5)), "access",
+                                     RotatingFileLogSink.DEFAULT_MAX_FILE_BYTES);
+    }
+    if (description.startsWith("kinesis:")) {
+      return new KinesisLogSink(new AmazonKinesisClient()::putRecords, description.substring(8),
+                                KinesisLogSink.DEFAULT_MAX_IN_FLIGHT);
+    }
+    throw new IllegalArgumentException("Unknown sink " + description);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3 || args.length > 5) {
+      throw new IllegalArgumentException("Expected arguments: sink (stdout, file:dir or " +
+                                         "kinesis:stream), records per second (0 for no " +
+                                         "limit), number of records, [threads], [seed]");
+    }
+
+    int numThreads = args.length > 3 ? Integer.parseInt(args[3]) :
+      Runtime.getRuntime().availableProcessors();
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : 0L;
+    long numRecords = Long.parseLong(args[2]);
+
+    LogGenerationEngine engine = new LogGenerationEngine(seed, DEFAULT_POOL_SIZE);
+    MetricRegistry registry = new MetricRegistry();
+    engine.registerMetrics(registry);
+    long startTime = System.nanoTime();
+    try (LogSink sink = createSink(args[0]);
+         Closeable reporters = LogMetrics.startReporters(registry, System::getProperty)) {
+      if (sink instanceof KinesisLogSink) {
+        ((KinesisLogSink) sink).registerMetrics(registry);
+      }
+      engine.generate(sink, numThreads, Integer.parseInt(args[1]), numRecords);
+    }
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    // Report on stderr, since the lines may be going to stdout
+    System.err.println(String.format("Generated %d records in %.1f s (%.0f/s)", numRecords,
+                                     seconds, numRecords / seconds));
+  }
+}
@@ -17,10 +17,10 @@ limitations under the License.
 package com.mh2c;
 
 import com.amazonaws.services.kinesis.AmazonKinesisClient;
-import com.amazonaws.services.kinesis.model.PutRecordRequest;
-import com.amazonaws.services.kinesis.model.PutRecordResult;
+import com.codahale.metrics.MetricRegistry;
 import com.github.javafaker.Faker;
-import java.nio.ByteBuffer;
+import java.io.Closeable;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
 import java.time.ZonedDateTime;
@@ -32,73 +32,94 @@ import org.apache.commons.math3.util.Pair;
 
 /**
  * A generator for fake Apache access log lines which submits each line to an
- * Amazon Kinesis stream.
+ * Amazon Kinesis stream, or to another {@link LogSink}.
  */
 public class LogGenerator {
 
-  private static final String PARTITION_KEY = "thekey";
-
   /**
-   * Generates log lines and sends them to Kinesis.
+   * Generates log lines and sends them to Kinesis, in batches.
    *
    * @param streamName Kinesis stream name
    * @param recsPerSecond number of records to send each second
    * @param numRecords total number of records to send
+   * @throws IOException if lines cannot be sent
+   * @throws InterruptedException if generation is interrupted
    */
   public void generate(String streamName, int recsPerSecond, int numRecords)
-    throws InterruptedException {
+    throws IOException, InterruptedException {
 
     AmazonKinesisClient client = new AmazonKinesisClient();
-
-    int numPasses = (numRecords + recsPerSecond - 1) / recsPerSecond;
-    int recordsLeft = numRecords;
-    for (int i = 0; i < numPasses; i++) {
-      int numToGenerate = Math.min(recordsLeft, recsPerSecond);
-      for (int j = 0; j < numToGenerate; j++) {
-        String logLine = generateLogLine();
-
-        PutRecordRequest request = new PutRecordRequest()
-          .withStreamName(streamName)
-          .withPartitionKey(PARTITION_KEY)
-          .withData(ByteBuffer.wrap(logLine.getBytes(StandardCharsets.UTF_8)));
-        PutRecordResult result = client.putRecord(request);
-        System.out.println(String.format("Wrote to shard %s as %s", result.getShardId(),
-                                         result.getSequenceNumber()));
+    KinesisLogSink sink = new KinesisLogSink(client::putRecords, streamName,
+                                             KinesisLogSink.DEFAULT_MAX_IN_FLIGHT);
+    MetricRegistry registry = new MetricRegistry();
+    sink.registerMetrics(registry);
+    long startTime = System.nanoTime();
+    try (Closeable reporters = LogMetrics.startReporters(registry, System::getProperty)) {
+      try {
+        generate(sink, recsPerSecond, numRecords);
+      } finally {
+        sink.close();
       }
+    }
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    System.out.println(String.format("Sent %d records in %.1f s (%.0f/s), %d retries, " +
+                                     "%d failed", sink.getNumSent(), seconds,
+                                     sink.getNumSent() / seconds, sink.getNumRetried(),
+                                     sink.getNumFailed()));
+  }
 
-      recordsLeft -= numToGenerate;
-      if (recordsLeft > 0) {
-        Thread.sleep(1000L);
+  /**
+   * Generates log lines and writes them to a sink, paced by a token bucket.
+   * The sink is not closed.
+   *
+   * @param sink sink for log lines
+   * @param recsPerSecond number of records to write each second, or 0 for no
+   * limit
+   * @param numRecords total number of records to write
+   * @throws IOException if lines cannot be written
+   * @throws InterruptedException if generation is interrupted
+   */
+  public void generate(LogSink sink, int recsPerSecond, int numRecords)
+    throws IOException, InterruptedException {
+
+    // Allow bursts of a tenth of a second's worth of records
+    TokenBucket rateLimiter = recsPerSecond > 0 ?
+      new TokenBucket(recsPerSecond, Math.max(1.0, recsPerSecond / 10.0)) : null;
+    for (int i = 0; i < numRecords; i++) {
+      if (rateLimiter != null) {
+        rateLimiter.acquire(1);
       }
+      byte[] line = generateLogLine().getBytes(StandardCharsets.UTF_8);
+      sink.write(line, 0, line.length);
     }
   }
 
-  private static final String FORMAT = "%s - - [%s] \"%s %s HTTP/1.0\" %s %d \"%s\" \"%s\"";
+  private static final String FORMAT = "%s %d - [%s] \"%s %s HTTP/1.0\" %s %d \"%s\" \"%s\"";
 
   private Random random = new Random();
   private Faker faker = new Faker();
   private static final DateTimeFormatter TIMESTAMP_FORMATTER =
     DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z");
-  private static final EnumeratedDistribution<String> METHODS = makeDistribution(
+  static final EnumeratedDistribution<String> METHODS = makeDistribution(
     Pair.create("GET", 6.0),
     Pair.create("POST", 2.0),
     Pair.create("PUT", 1.0)
   );
-  private static final EnumeratedDistribution<String> RESOURCES = makeDistribution(
+  static final EnumeratedDistribution<String> RESOURCES = makeDistribution(
     Pair.create("/page1", 10.0),
     Pair.create("/page2", 9.0),
     Pair.create("/page3", 7.0),
     Pair.create("/page4", 3.0),
     Pair.create("/secretpage", 0.5)
   );
-  private static final EnumeratedDistribution<String> RESPONSES = makeDistribution(
+  static final EnumeratedDistribution<String> RESPONSES = makeDistribution(
     Pair.create("200", 8.0),
     Pair.create("404", 2.0),
     Pair.create("401", 0.5),
     Pair.create("403", 0.5)
   );
   // see NOTICE.md for license information for user agent strings below
-  private static final EnumeratedDistribution<String> USER_AGENTS = makeDistribution(
+  static final EnumeratedDistribution<String> USER_AGENTS = makeDistribution(
     Pair.create("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/55.0.2883.87 Safari/537.36", 4.7),
     Pair.create("Mozilla/5.0 (Windows NT 10.0; WOW64; rv:50.0) Gecko/20100101 Firefox/50.0", 3.8),
     Pair.create("Mozilla/5.0 (Macintosh; Intel Mac OS X 10_12_1) AppleWebKit/602.2.14 (KHTML, like Gecko) Version/10.0.1 Safari/602.2.14", 2.5),
@@ -111,8 +132,10 @@ public class LogGenerator {
     return new EnumeratedDistribution<String>(Arrays.asList(items));
   }
 
-  private String generateLogLine() {
+  String generateLogLine() {
     String ipAddress = faker.internet().privateIpV4Address();
+    // Note the generation time for measuring latency, in the identity field
+    long generatedAt = System.currentTimeMillis();
     String dateTime = TIMESTAMP_FORMATTER.format(ZonedDateTime.now());
     String method = METHODS.sample();
     String resource = RESOURCES.sample();
@@ -121,8 +144,8 @@ public class LogGenerator {
     String referer = faker.internet().url();
     String userAgent = USER_AGENTS.sample();
 
-    return String.format(FORMAT, ipAddress, dateTime, method, resource, status, bytes, referer,
-                         userAgent);
+    return String.format(FORMAT, ipAddress, generatedAt, dateTime, method, resource, status,
+                         bytes, referer, userAgent);
   }
 
   public static void main(String[] args) throws Exception {
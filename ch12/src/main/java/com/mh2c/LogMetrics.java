@@ -0,0 +1,148 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import com.codahale.metrics.CsvReporter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Slf4jReporter;
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts reporters for the metrics of the log generators and processors.
+ * {@value #REPORTERS_PROPERTY} lists the reporters, separated by commas:
+ * "jmx" publishes metrics as MBeans, "csv" appends them to one file per
+ * metric in {@value #CSV_DIR_PROPERTY}, and "log" logs them. The scheduled
+ * reporters report every {@value #PERIOD_PROPERTY} seconds, and once more
+ * when stopped.
+ *
+ * Latencies are kept in histograms of whole units, named for the unit.
+ */
+final class LogMetrics {
+
+  static final String REPORTERS_PROPERTY = "spark.mh2c.metrics.reporters";
+  static final String JMX = "jmx";
+  static final String CSV = "csv";
+  static final String LOG = "log";
+  static final String DEFAULT_REPORTERS = LOG;
+  static final String PERIOD_PROPERTY = "spark.mh2c.metrics.period";
+  static final int DEFAULT_PERIOD = 10;
+  static final String CSV_DIR_PROPERTY = "spark.mh2c.metrics.csv.dir";
+  static final String DEFAULT_CSV_DIR = "metrics";
+
+  private LogMetrics() {
+  }
+
+  /**
+   * Registers a histogram backed by a {@link LatencyHistogram}.
+   *
+   * @param registry metric registry
+   * @param name metric name
+   * @param histogram histogram holding the values
+   */
+  static void register(MetricRegistry registry, String name, LatencyHistogram histogram) {
+    registry.register(name, new LatencyMetric(histogram));
+  }
+
+  /**
+   * A metrics histogram over a {@link LatencyHistogram}. Values are recorded
+   * straight into the latency histogram rather than through
+   * {@link Histogram#update(long)}, which is the only thing that moves a
+   * plain Histogram's count, so the count comes from the latency histogram
+   * too. Reporters only report metrics that are Histograms.
+   */
+  static class LatencyMetric extends Histogram {
+
+    private final LatencyHistogram histogram;
+
+    LatencyMetric(LatencyHistogram histogram) {
+      super(histogram);
+      this.histogram = histogram;
+    }
+
+    @Override
+    public long getCount() {
+      return histogram.getCount();
+    }
+  }
+
+  /**
+   * Starts the configured reporters for a registry.
+   *
+   * @param registry metric registry
+   * @param settings lookup for settings by name and default value, such as
+   * {@code SparkConf::get} or {@code System::getProperty}
+   * @return handle that stops the reporters when closed
+   * @throws IllegalArgumentException if a reporter is not known
+   */
+  static Closeable startReporters(MetricRegistry registry,
+                                  BiFunction<String, String, String> settings) {
+    int period = Integer.parseInt(settings.apply(PERIOD_PROPERTY,
+                                                 Integer.toString(DEFAULT_PERIOD)));
+    List<Closeable> reporters = new ArrayList<>();
+    for (String name : settings.apply(REPORTERS_PROPERTY, DEFAULT_REPORTERS).split(",")) {
+      switch (name.trim()) {
+      case JMX:
+        JmxReporter jmxReporter = JmxReporter.forRegistry(registry).build();
+        jmxReporter.start();
+        reporters.add(jmxReporter);
+        break;
+      case CSV:
+        File csvDir = new File(settings.apply(CSV_DIR_PROPERTY, DEFAULT_CSV_DIR));
+        csvDir.mkdirs();
+        reporters.add(start(CsvReporter.forRegistry(registry)
+                            .formatFor(Locale.US)
+                            .build(csvDir), period));
+        break;
+      case LOG:
+        reporters.add(start(Slf4jReporter.forRegistry(registry)
+                            .outputTo(LoggerFactory.getLogger("com.mh2c.metrics"))
+                            .build(), period));
+        break;
+      case "":
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown metrics reporter " + name);
+      }
+    }
+    return () -> {
+      for (Closeable reporter : reporters) {
+        reporter.close();
+      }
+    };
+  }
+
+  /**
+   * Starts a scheduled reporter, which reports one last time when closed.
+   */
+  private static Closeable start(ScheduledReporter reporter, int period) {
+    reporter.start(period, TimeUnit.SECONDS);
+    return () -> {
+      reporter.report();
+      reporter.stop();
+    };
+  }
+}
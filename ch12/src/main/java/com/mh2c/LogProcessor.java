@@ -16,30 +16,82 @@ limitations under the License.
 
 package com.mh2c;
 
-import com.amazonaws.services.kinesis.AmazonKinesisClient;
-import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
-import com.amazonaws.util.Md5Utils;
-import java.nio.charset.StandardCharsets;
+import com.codahale.metrics.MetricRegistry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.TextOutputFormat;
 import org.apache.spark.SparkConf;
-import org.apache.spark.storage.StorageLevel;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.serializer.KryoSerializer;
 import org.apache.spark.streaming.Duration;
 import org.apache.spark.streaming.api.java.JavaDStream;
 import org.apache.spark.streaming.api.java.JavaPairDStream;
 import org.apache.spark.streaming.api.java.JavaStreamingContext;
-import org.apache.spark.streaming.kinesis.KinesisUtils;
 import scala.Tuple2;
 
 /**
  * A Spark Streaming job that reads Apache log lines from a Kinesis stream,
- * processes them, and writes the results to Hadoop.
+ * or another {@link LogSource}, processes them, and writes the results to
+ * Hadoop. {@link LogProcessorBenchmark} measures how fast it can go.
+ *
+ * IP addresses are anonymized with the hash named by
+ * {@value IpAnonymizer#ANONYMIZER_PROPERTY}, through a cache on each
+ * executor holding up to {@value IpAnonymizationCache#SIZE_PROPERTY}
+ * addresses. User agents are categorized with the rules in
+ * {@value UserAgentClassifier#RULES_PROPERTY}. Records are written as text
+ * files, or as Parquet or ORC files partitioned by hour when
+ * {@value ColumnarLogWriter#FORMAT_PROPERTY} is "parquet" or "orc".
+ *
+ * Text records are written into the output directory by a
+ * {@link RollingLogWriter}, which commits each batch exactly once, and a
+ * {@link LogCompactor} rolls them into large files in the background, along
+ * with the directories of totals and visitor sketches written each batch.
+ * If {@value RollingLogWriter#ROLL_INTERVAL_PROPERTY} is 0, each batch of
+ * records is written to its own directory alongside the output directory,
+ * and nothing is merged.
+ *
+ * The stream is read by {@value LogSource#RECEIVERS_PROPERTY} receivers,
+ * one per shard by default, which share the shards among themselves. Each
+ * receiver occupies an executor core. Lines may instead be replayed from
+ * files, as described in {@link LogSource}. The received lines are spread
+ * over {@value #PARTITIONS_PROPERTY} partitions, by default the default
+ * parallelism of the cluster, or left as received if that is 0. Backpressure
+ * is on unless spark.streaming.backpressure.enabled says otherwise, and
+ * spark.streaming.receiver.maxRate caps the rate of each receiver.
+ *
+ * Request and byte totals by resource, status and user agent category over
+ * the last {@value LogAggregator#WINDOW_PROPERTY} milliseconds, by default
+ * {@value LogAggregator#DEFAULT_WINDOW} rounded up to a multiple of the batch
+ * interval, are written every {@value LogAggregator#SLIDE_PROPERTY}
+ * milliseconds, by default every batch, alongside the records. Both must be
+ * multiples of the batch interval. A window of 0 turns aggregation off. The
+ * totals are checkpointed to {@value LogAggregator#CHECKPOINT_DIR_PROPERTY},
+ * by default a sibling of the output directory.
+ *
+ * Distinct visitors to each resource are sketched in buckets of
+ * {@value VisitorCounter#BUCKET_PROPERTY} milliseconds, by default
+ * {@value VisitorCounter#DEFAULT_BUCKET}, as described in
+ * {@link VisitorCounter}, and written alongside the records. A bucket of 0
+ * turns counting off. The sketches are checkpointed with the totals.
+ *
+ * Stage timings, batch sizes and delays, and the latency from generation of
+ * each line until it is written are reported as described in
+ * {@link LogMetrics} and {@link ProcessorMetrics}.
+ *
+ * {@link StructuredLogProcessor} is an alternative that reads files with
+ * Structured Streaming and aggregates by the time of each request.
  */
 public class LogProcessor {
 
   private static final String APP_NAME = "ApacheAccessLogProcessor";
 
+  static final String PARTITIONS_PROPERTY = "spark.mh2c.partitions";
+
   /**
    * Processes a Kinesis stream.
    *
@@ -47,44 +99,39 @@ public class LogProcessor {
    * @param region AWS region housing Kinesis stream
    * @param batchInterval streaming batch interval, in milliseconds
    * @param hadoopDir directory prefix in Hadoop where files are written
+   * @throws IOException if metrics reporters cannot be stopped
    * @throws InterruptedException if processing is interrupted
    */
   public void process(String streamName, String region, int batchInterval, String hadoopDir)
-    throws InterruptedException {
-
-    String kinesisEndpoint = String.format("https://kinesis.%s.amazonaws.com/", region);
+    throws IOException, InterruptedException {
+    process(new LogSource.Kinesis(APP_NAME, streamName, region), batchInterval, hadoopDir);
+  }
 
-    AmazonKinesisClient client = new AmazonKinesisClient();
-    client.setEndpoint(kinesisEndpoint);
+  /**
+   * Processes lines from a source.
+   *
+   * @param source source of lines
+   * @param batchInterval streaming batch interval, in milliseconds
+   * @param hadoopDir directory prefix in Hadoop where files are written
+   * @throws IOException if metrics reporters cannot be stopped
+   * @throws InterruptedException if processing is interrupted
+   */
+  void process(LogSource source, int batchInterval, String hadoopDir)
+    throws IOException, InterruptedException {
 
-    int numShards = client.describeStream(streamName).getStreamDescription().getShards().size();
-    SparkConf conf = new SparkConf().setAppName(APP_NAME);
+    SparkConf conf = createConf();
     JavaStreamingContext ctx = new JavaStreamingContext(conf, new Duration(batchInterval));
+    ProcessorMetrics metrics = buildPipeline(ctx, source, batchInterval, hadoopDir);
 
-    JavaDStream<byte[]> kinesisStream =
-      KinesisUtils.createStream(ctx, APP_NAME, streamName, kinesisEndpoint, region,
-                                InitialPositionInStream.LATEST, new Duration(batchInterval),
-                                StorageLevel.MEMORY_AND_DISK_2());
-
-    // Make more DStreams
-    JavaDStream<ApacheLogRecord> processedRecords = kinesisStream
-      .map(line -> new ApacheLogRecord(new String(line, StandardCharsets.UTF_8)))
-      .map(record -> record.withIpAddress(anonymizeIpAddress(record.getIpAddress())))
-      .map(record -> record.withUserAgent(categorizeUserAgent(record.getUserAgent())))
-    ;
-
-    // Only pair streams can be written as Hadoop files
-    JavaPairDStream<String, ApacheLogRecord> markedRecords = processedRecords
-      .transformToPair(recordRdd -> recordRdd.mapToPair(
-                                      record -> new Tuple2<>(UUID.randomUUID().toString(), record)
-                                    ));
-
-    // Write out to Hadoop
-    markedRecords.print();
-    markedRecords.saveAsHadoopFiles(hadoopDir, "txt", Text.class, Text.class, TextOutputFormat.class);
+    LogCompactor compactor = LogCompactor.forProcessor(ctx.sparkContext(), hadoopDir);
 
+    MetricRegistry registry = new MetricRegistry();
+    metrics.register(registry);
+    compactor.registerMetrics(registry);
+    ctx.addStreamingListener(metrics.listener());
     ctx.start();
-    try {
+    try (Closeable reporters = LogMetrics.startReporters(registry, conf::get);
+         Closeable compaction = compactor.start()) {
       ctx.awaitTermination();
     } catch (InterruptedException e) {
       System.out.println("Streaming stopped");
@@ -92,34 +139,177 @@ public class LogProcessor {
     }
   }
 
-  private static String anonymizeIpAddress(String ipAddress) {
-    // Note that MD5 is not strong enough for production use
-    return Md5Utils.md5AsBase64(ipAddress.getBytes(StandardCharsets.UTF_8));
+  /**
+   * Creates the Spark configuration for the processor, with defaults suited
+   * to it.
+   *
+   * @return Spark configuration
+   */
+  static SparkConf createConf() {
+    SparkConf conf = new SparkConf().setAppName(APP_NAME);
+    // Serialize records compactly with Kryo, unless told otherwise
+    conf.setIfMissing("spark.serializer", KryoSerializer.class.getName());
+    conf.setIfMissing("spark.kryo.registrator", LogProcessorKryoRegistrator.class.getName());
+    // Slow down receivers when batches fall behind
+    conf.setIfMissing("spark.streaming.backpressure.enabled", "true");
+    return conf;
   }
 
-  private static String categorizeUserAgent(String userAgent) {
-    if (userAgent.contains("OPR")) {
-      return "OPERA";
+  /**
+   * Sets up processing of lines from a source in a streaming context, which
+   * is not started.
+   *
+   * @param ctx streaming context
+   * @param source source of lines
+   * @param batchInterval streaming batch interval, in milliseconds
+   * @param hadoopDir directory prefix in Hadoop where files are written
+   * @return metrics for the processing
+   */
+  static ProcessorMetrics buildPipeline(JavaStreamingContext ctx, LogSource source,
+                                        int batchInterval, String hadoopDir) {
+
+    SparkConf conf = ctx.sparkContext().getConf();
+    JavaDStream<byte[]> lines = source.createStream(ctx, new Duration(batchInterval));
+    // Spread processing over the cluster, not just the receivers' executors
+    int numPartitions = conf.getInt(PARTITIONS_PROPERTY, ctx.sparkContext().defaultParallelism());
+    if (numPartitions > 0) {
+      lines = lines.repartition(numPartitions);
     }
-    if (userAgent.contains("Chrome")) {
-      return "CHROME";
+
+    // Share one anonymization cache among all tasks on each executor
+    IpAnonymizer anonymizer =
+      IpAnonymizer.create(conf.get(IpAnonymizer.ANONYMIZER_PROPERTY,
+                                   IpAnonymizer.DEFAULT_ANONYMIZER),
+                          conf.get(IpAnonymizer.KEY_PROPERTY, null));
+    Broadcast<IpAnonymizationCache> ipCache = ctx.sparkContext().broadcast(
+      new IpAnonymizationCache(anonymizer, conf.getInt(IpAnonymizationCache.SIZE_PROPERTY,
+                                                       IpAnonymizationCache.DEFAULT_SIZE)));
+    ProcessorMetrics metrics = new ProcessorMetrics(ctx.sparkContext().sc());
+    Broadcast<UserAgentClassifier> userAgentClassifier = ctx.sparkContext().broadcast(
+      new UserAgentClassifier(conf.get(UserAgentClassifier.RULES_PROPERTY,
+                                       UserAgentClassifier.DEFAULT_RULES),
+                              conf.getInt(UserAgentClassifier.CACHE_SIZE_PROPERTY,
+                                          UserAgentClassifier.DEFAULT_CACHE_SIZE)));
+
+    // Process each record in one pass, then key it; only pair streams can be
+    // written as Hadoop files
+    JavaDStream<ApacheLogRecord> records = lines
+      .transform((rdd, time) -> rdd.mapPartitions(
+        partition -> processPartition(partition, ipCache.value(), userAgentClassifier.value(),
+                                      metrics, time.milliseconds())));
+    // Several outputs read the records, so only process each batch once
+    records.cache();
+    JavaPairDStream<String, ApacheLogRecord> markedRecords =
+      records.mapToPair(record -> new Tuple2<>(randomKey(ThreadLocalRandom.current()), record));
+
+    // Write out to Hadoop
+    String outputFormat = conf.get(ColumnarLogWriter.FORMAT_PROPERTY,
+                                   ColumnarLogWriter.DEFAULT_FORMAT);
+    if (outputFormat.equals(ColumnarLogWriter.TEXT)) {
+      markedRecords.print();
+      if (conf.getLong(RollingLogWriter.ROLL_INTERVAL_PROPERTY,
+                       RollingLogWriter.DEFAULT_ROLL_INTERVAL) > 0L) {
+        RollingLogWriter writer = new RollingLogWriter(ctx.sparkContext(), hadoopDir);
+        markedRecords.foreachRDD(writer::write);
+      } else {
+        markedRecords.saveAsHadoopFiles(hadoopDir, "txt", Text.class, Text.class,
+                                        TextOutputFormat.class);
+      }
+    } else {
+      ColumnarLogWriter writer = new ColumnarLogWriter(outputFormat, hadoopDir);
+      records.foreachRDD(writer::write);
     }
-    if (userAgent.contains("Safari")) {
-      return "SAFARI";
+    // Keep windowed totals, updated incrementally each slide
+    long aggregateWindow = conf.getLong(LogAggregator.WINDOW_PROPERTY,
+                                        LogAggregator.defaultWindow(batchInterval));
+    long visitorBucket = conf.getLong(VisitorCounter.BUCKET_PROPERTY,
+                                      VisitorCounter.DEFAULT_BUCKET);
+    if (aggregateWindow > 0L || visitorBucket > 0L) {
+      ctx.checkpoint(conf.get(LogAggregator.CHECKPOINT_DIR_PROPERTY, hadoopDir + "-checkpoint"));
     }
-    if (userAgent.contains("Firefox")) {
-      return "FIREFOX";
+    if (aggregateWindow > 0L) {
+      LogAggregator aggregator =
+        new LogAggregator(aggregateWindow, conf.getLong(LogAggregator.SLIDE_PROPERTY,
+                                                        batchInterval),
+                          batchInterval);
+      aggregator.save(aggregator.aggregate(records), hadoopDir + "-aggregates");
     }
-    if (userAgent.contains("Trident")) {
-      return "IE";
+    // Sketch distinct visitors, a fixed size per resource and bucket
+    if (visitorBucket > 0L) {
+      VisitorCounter visitorCounter =
+        new VisitorCounter(visitorBucket,
+                           conf.getInt(VisitorCounter.PRECISION_PROPERTY,
+                                       VisitorCounter.DEFAULT_PRECISION),
+                           conf.getLong(VisitorCounter.TIMEOUT_PROPERTY,
+                                        VisitorCounter.DEFAULT_TIMEOUT));
+      visitorCounter.save(visitorCounter.count(records), hadoopDir + "-visitors");
     }
-    return "OTHER";
+    // Collect the batch's metrics once it is written
+    records.foreachRDD((rdd, time) -> metrics.completeBatch(time.milliseconds()));
+    return metrics;
+  }
+
+  /**
+   * Parses, anonymizes and categorizes the lines in a partition, one at a
+   * time, staging each record in a reused builder. Some records are timed.
+   */
+  static Iterator<ApacheLogRecord> processPartition(
+    Iterator<byte[]> lines, IpAnonymizationCache ipCache,
+    UserAgentClassifier userAgentClassifier, ProcessorMetrics metrics, long batchTime) {
+
+    ApacheLogRecord.Builder builder = new ApacheLogRecord.Builder();
+    return new Iterator<ApacheLogRecord>() {
+      private long count;
+
+      @Override
+      public boolean hasNext() {
+        return lines.hasNext();
+      }
+
+      @Override
+      public ApacheLogRecord next() {
+        boolean sampled = count++ % ProcessorMetrics.SAMPLE_INTERVAL == 0L;
+        long start = sampled ? System.nanoTime() : 0L;
+        builder.parse(lines.next());
+        long parsed = sampled ? System.nanoTime() : 0L;
+        builder.setIpAddress(ipCache.anonymize(builder.getIpAddress(), metrics.getIpCacheHits(),
+                                               metrics.getIpCacheMisses()));
+        long anonymized = sampled ? System.nanoTime() : 0L;
+        builder.setUserAgent(userAgentClassifier.categorize(builder.getUserAgent()));
+        if (sampled) {
+          long categorized = System.nanoTime();
+          long generatedAt = builder.getGeneratedAt();
+          metrics.recordSample(parsed - start, anonymized - parsed, categorized - anonymized,
+                               generatedAt > 0L ? batchTime - generatedAt : -1L);
+        }
+        return builder.build();
+      }
+    };
+  }
+
+  /**
+   * Makes a random (version 4) UUID string, like UUID.randomUUID(), but
+   * without the cost of a secure random number generator; keys only need to
+   * be unique.
+   */
+  private static String randomKey(Random random) {
+    long mostSigBits = (random.nextLong() & ~0xf000L) | 0x4000L;
+    long leastSigBits = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+    return new UUID(mostSigBits, leastSigBits).toString();
   }
 
   public static void main(String[] args) throws Exception {
+    if (args.length == 3) {
+      new LogProcessor().process(LogSource.create(args[0], APP_NAME), Integer.parseInt(args[1]),
+                                 args[2]);
+      return;
+    }
     if (args.length != 4) {
       throw new IllegalArgumentException("Expected arguments: Kinesis stream name, " +
-                                         "AWS region, batch interval in ms, HDFS output directory");
+                                         "AWS region, batch interval in ms, HDFS output " +
+                                         "directory; or source (kinesis:region:stream or " +
+                                         "replay:directory), batch interval in ms, HDFS " +
+                                         "output directory");
     }
 
     new LogProcessor().process(args[0], args[1], Integer.parseInt(args[2]), args[3]);
@@ -0,0 +1,277 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.streaming.Duration;
+import org.apache.spark.streaming.api.java.JavaStreamingContext;
+
+/**
+ * Measures the throughput of {@link LogProcessor}, by default in local mode,
+ * without Kinesis. Lines from a pool made by {@link LogGenerationEngine},
+ * with a fixed seed that defaults to {@value #DEFAULT_SEED}, are fed to the full pipeline through an in-memory queue, one batch at a time,
+ * and written to a temporary directory. Each step runs
+ * {@value #DEFAULT_BATCHES} batches at a fixed rate, after a warm-up step
+ * that is not reported. The rate doubles until the pipeline falls behind,
+ * and is then narrowed down to the maximum rate that it sustains: the rate
+ * where 90% of batches are processed within the batch interval and no batch
+ * waits a whole interval to start.
+ *
+ * Queued streams cannot be checkpointed, so windowed aggregation and
+ * visitor counting are off; the other settings of the processor apply as
+ * usual. To include them, run the processor on a replay source instead.
+ */
+public class LogProcessorBenchmark {
+
+  static final int DEFAULT_BATCH_INTERVAL = 1000;
+  static final int DEFAULT_START_RATE = 10000;
+  static final int DEFAULT_BATCHES = 10;
+  static final long DEFAULT_SEED = 0L;
+
+  private static final int POOL_SIZE = 100000;
+  private static final double PRECISION = 0.1;
+
+  private final JavaSparkContext sc;
+  private final int batchInterval;
+  private final int batchesPerStep;
+  private final Broadcast<List<byte[]>> pool;
+  private final File outputDir;
+  private int step;
+
+  /**
+   * Creates a new benchmark.
+   *
+   * @param sc Spark context
+   * @param batchInterval streaming batch interval, in milliseconds
+   * @param batchesPerStep number of batches to run at each rate
+   * @param outputDir directory where processed records are written
+   * @param seed random seed for the lines
+   * @throws IOException if lines cannot be generated
+   * @throws InterruptedException if generation is interrupted
+   */
+  LogProcessorBenchmark(JavaSparkContext sc, int batchInterval, int batchesPerStep,
+                        File outputDir, long seed) throws IOException, InterruptedException {
+    this.sc = sc;
+    this.batchInterval = batchInterval;
+    this.batchesPerStep = batchesPerStep;
+    this.outputDir = outputDir;
+
+    List<byte[]> lines = new ArrayList<>(POOL_SIZE);
+    LogSink sink = new LogSink() {
+      @Override
+      public synchronized void write(byte[] line, int offset, int length) {
+        lines.add(Arrays.copyOfRange(line, offset, offset + length));
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    new LogGenerationEngine(seed, LogGenerationEngine.DEFAULT_POOL_SIZE)
+      .generate(sink, 1, 0, POOL_SIZE);
+    pool = sc.broadcast(lines);
+  }
+
+  /**
+   * Results of running the pipeline at one rate.
+   */
+  static class Result {
+    final int rate;
+    final double recordsPerSecond;
+    final double meanProcessingTime;
+    final long p90ProcessingTime;
+    final long maxSchedulingDelay;
+    final boolean sustained;
+
+    Result(int rate, ProcessorMetrics metrics, int batchInterval) {
+      this.rate = rate;
+      LatencyHistogram processingDelays = metrics.getProcessingDelays();
+      meanProcessingTime = processingDelays.getMean();
+      p90ProcessingTime = processingDelays.getValueAtPercentile(90.0);
+      maxSchedulingDelay = metrics.getSchedulingDelays().getMax();
+      recordsPerSecond = meanProcessingTime > 0.0 ?
+        metrics.getBatchRecords().getMean() * 1000.0 / meanProcessingTime : 0.0;
+      sustained = p90ProcessingTime <= batchInterval && maxSchedulingDelay < batchInterval;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%10d %12.0f %10.1f %10d %10d  %s", rate, recordsPerSecond,
+                           meanProcessingTime, p90ProcessingTime, maxSchedulingDelay,
+                           sustained ? "yes" : "no");
+    }
+  }
+
+  /**
+   * Runs the pipeline for a step's worth of batches at a rate.
+   *
+   * @param rate input rate, in lines per second
+   * @return results
+   * @throws InterruptedException if interrupted while waiting for batches
+   */
+  Result run(int rate) throws InterruptedException {
+    int linesPerBatch = (int) ((long) rate * batchInterval / 1000L);
+    int numSlices = sc.defaultParallelism();
+    Queue<JavaRDD<byte[]>> queue = new LinkedList<>();
+    for (int i = 0; i < batchesPerStep; i++) {
+      queue.add(batch((long) i * linesPerBatch, linesPerBatch, numSlices));
+    }
+
+    JavaStreamingContext ctx = new JavaStreamingContext(sc, new Duration(batchInterval));
+    String hadoopDir = new File(outputDir, "step-" + step++).getPath() + "/logs";
+    ProcessorMetrics metrics = LogProcessor.buildPipeline(ctx, new LogSource.InMemory(queue),
+                                                          batchInterval, hadoopDir);
+    ctx.addStreamingListener(metrics.listener());
+    ctx.start();
+    try {
+      while (metrics.getBatchRecords().getCount() < batchesPerStep) {
+        Thread.sleep(batchInterval / 10 + 1);
+      }
+    } finally {
+      // Keep the Spark context for the next step
+      ctx.stop(false, false);
+    }
+    return new Result(rate, metrics, batchInterval);
+  }
+
+  /**
+   * Makes a batch of lines from the pool, which are only gathered once the
+   * batch is processed. Lines are reused as needed.
+   */
+  private JavaRDD<byte[]> batch(long first, int count, int numSlices) {
+    List<Integer> slices = new ArrayList<>(numSlices);
+    for (int i = 0; i < numSlices; i++) {
+      slices.add(i);
+    }
+    Broadcast<List<byte[]>> pool = this.pool;
+    return sc.parallelize(slices, numSlices).flatMap(
+      slice -> new PoolIterator(pool.value(), first + (long) count * slice / numSlices,
+                                first + (long) count * (slice + 1) / numSlices));
+  }
+
+  /**
+   * Iterates over a range of lines from the pool, wrapping around.
+   */
+  private static class PoolIterator implements Iterator<byte[]> {
+    private final List<byte[]> pool;
+    private final long end;
+    private long next;
+
+    PoolIterator(List<byte[]> pool, long start, long end) {
+      this.pool = pool;
+      this.next = start;
+      this.end = end;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < end;
+    }
+
+    @Override
+    public byte[] next() {
+      if (next >= end) {
+        throw new NoSuchElementException();
+      }
+      return pool.get((int) (next++ % pool.size()));
+    }
+  }
+
+  /**
+   * Finds the maximum rate that the pipeline sustains, printing the results
+   * at each rate tried.
+   *
+   * @param startRate first rate to try, in lines per second
+   * @return maximum sustained rate, or 0 if even the first rate is too fast
+   * @throws InterruptedException if interrupted while waiting for batches
+   */
+  int findMaximumRate(int startRate) throws InterruptedException {
+    System.out.println("Warming up");
+    run(startRate);
+
+    System.out.println(String.format("%10s %12s %10s %10s %10s  %s", "rate", "records/s",
+                                     "mean ms", "p90 ms", "max wait", "sustained"));
+    int sustained = 0;
+    int unsustained = 0;
+    for (int rate = startRate; unsustained == 0 && rate > 0; rate *= 2) {
+      Result result = run(rate);
+      System.out.println(result);
+      if (result.sustained) {
+        sustained = rate;
+      } else {
+        unsustained = rate;
+      }
+    }
+    // Narrow down between the last rate kept up with and the first one not
+    while (sustained > 0 && unsustained - sustained > sustained * PRECISION) {
+      int rate = sustained + (unsustained - sustained) / 2;
+      Result result = run(rate);
+      System.out.println(result);
+      if (result.sustained) {
+        sustained = rate;
+      } else {
+        unsustained = rate;
+      }
+    }
+    return sustained;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 4) {
+      throw new IllegalArgumentException("Expected arguments: [batch interval in ms " +
+                                         "[starting rate [batches per rate [seed]]]]");
+    }
+    int batchInterval = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BATCH_INTERVAL;
+    int startRate = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_START_RATE;
+    int batchesPerStep = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCHES;
+    long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+
+    SparkConf conf = LogProcessor.createConf();
+    conf.setIfMissing("spark.master", "local[*]");
+    // Batches are already spread over the cores, as a repartition would do
+    conf.setIfMissing(LogProcessor.PARTITIONS_PROPERTY, "0");
+    conf.set(LogAggregator.WINDOW_PROPERTY, "0");
+    conf.set(VisitorCounter.BUCKET_PROPERTY, "0");
+    File outputDir = Files.createTempDirectory("log-processor-benchmark").toFile();
+    JavaSparkContext sc = new JavaSparkContext(conf);
+    try {
+      int maximumRate = new LogProcessorBenchmark(sc, batchInterval, batchesPerStep, outputDir,
+                                                  seed)
+        .findMaximumRate(startRate);
+      System.out.println(String.format("Maximum sustained rate: %d records/s with %d ms " +
+                                       "batches on %d cores", maximumRate, batchInterval,
+                                       sc.defaultParallelism()));
+    } finally {
+      sc.stop();
+      FileUtil.fullyDelete(outputDir);
+    }
+  }
+}
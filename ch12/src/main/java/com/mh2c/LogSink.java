@@ -0,0 +1,71 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A destination for generated log lines. Implementations must be safe for
+ * use by multiple threads.
+ */
+public interface LogSink extends Closeable {
+
+  /**
+   * Writes a log line. The sink copies what it needs, so the caller may reuse
+   * the array afterwards.
+   *
+   * @param line array holding the line, in UTF-8, without a line terminator
+   * @param offset offset of the line in the array
+   * @param length length of the line
+   * @throws IOException if the line cannot be written
+   * @throws InterruptedException if interrupted while waiting to write
+   */
+  void write(byte[] line, int offset, int length) throws IOException, InterruptedException;
+
+  /**
+   * Writes a block of log lines, each ending with a newline. Sinks that can
+   * write a block at once should override this.
+   *
+   * @param lines array holding the lines, in UTF-8
+   * @param offset offset of the first line in the array
+   * @param length total length of the lines
+   * @throws IOException if the lines cannot be written
+   * @throws InterruptedException if interrupted while waiting to write
+   */
+  default void writeLines(byte[] lines, int offset, int length)
+    throws IOException, InterruptedException {
+
+    int end = offset + length;
+    int start = offset;
+    for (int i = offset; i < end; i++) {
+      if (lines[i] == '\n') {
+        write(lines, start, i - start);
+        start = i + 1;
+      }
+    }
+  }
+
+  /**
+   * Writes out any buffered lines and releases resources. Lines written
+   * before closing are delivered, or counted as failed, by the time this
+   * returns.
+   *
+   * @throws IOException if buffered lines cannot be written
+   */
+  @Override
+  void close() throws IOException;
+}
@@ -0,0 +1,265 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.util.LineReader;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.storage.StorageLevel;
+import org.apache.spark.streaming.Duration;
+import org.apache.spark.streaming.api.java.JavaDStream;
+import org.apache.spark.streaming.api.java.JavaStreamingContext;
+import org.apache.spark.streaming.kinesis.KinesisUtils;
+import org.apache.spark.streaming.receiver.Receiver;
+
+/**
+ * A source of log lines for {@link LogProcessor}. Besides a Kinesis stream,
+ * lines may be replayed from files, such as those written by
+ * {@link LogGenerationEngine} or archived from web servers, or taken from
+ * an in-memory queue, so that the processor can be tested and benchmarked
+ * without Kinesis.
+ */
+abstract class LogSource {
+
+  static final String RECEIVERS_PROPERTY = "spark.mh2c.kinesis.receivers";
+  static final String REPLAY_RATE_PROPERTY = "spark.mh2c.replay.rate";
+  static final String REPLAY_PASSES_PROPERTY = "spark.mh2c.replay.passes";
+
+  /**
+   * Creates a source from a description: "kinesis:region:stream" or
+   * "replay:directory".
+   *
+   * @param description source description
+   * @param appName application name, which Kinesis uses to track progress
+   * @return source
+   * @throws IllegalArgumentException if the description is not understood
+   */
+  static LogSource create(String description, String appName) {
+    if (description.startsWith("kinesis:")) {
+      String[] parts = description.split(":", 3);
+      if (parts.length < 3) {
+        throw new IllegalArgumentException("Expected kinesis:region:stream");
+      }
+      return new Kinesis(appName, parts[2], parts[1]);
+    }
+    if (description.startsWith("replay:")) {
+      return new Replay(description.substring(7));
+    }
+    throw new IllegalArgumentException("Unknown source " + description);
+  }
+
+  /**
+   * Creates a stream of lines.
+   *
+   * @param ctx streaming context
+   * @param batchInterval streaming batch interval
+   * @return stream of lines, as UTF-8 bytes
+   */
+  abstract JavaDStream<byte[]> createStream(JavaStreamingContext ctx, Duration batchInterval);
+
+  /**
+   * Lines from a Kinesis stream. The stream is read by
+   * {@value #RECEIVERS_PROPERTY} receivers, one per shard by default, which
+   * share the shards among themselves, and there must be at least one.
+   * Each receiver occupies an executor core.
+   */
+  static class Kinesis extends LogSource {
+
+    private final String appName;
+    private final String streamName;
+    private final String region;
+
+    Kinesis(String appName, String streamName, String region) {
+      this.appName = appName;
+      this.streamName = streamName;
+      this.region = region;
+    }
+
+    @Override
+    JavaDStream<byte[]> createStream(JavaStreamingContext ctx, Duration batchInterval) {
+      String kinesisEndpoint = String.format("https://kinesis.%s.amazonaws.com/", region);
+
+      AmazonKinesisClient client = new AmazonKinesisClient();
+      client.setEndpoint(kinesisEndpoint);
+
+      int numShards =
+        client.describeStream(streamName).getStreamDescription().getShards().size();
+
+      // Receive from the shards in parallel
+      int numReceivers = ctx.sparkContext().getConf().getInt(RECEIVERS_PROPERTY, numShards);
+      if (numReceivers <= 0) {
+        throw new IllegalArgumentException(RECEIVERS_PROPERTY + " of " + numReceivers +
+                                           " must be at least 1");
+      }
+      List<JavaDStream<byte[]>> receiverStreams = new ArrayList<>(numReceivers);
+      for (int i = 0; i < numReceivers; i++) {
+        receiverStreams.add(
+          KinesisUtils.createStream(ctx, appName, streamName, kinesisEndpoint, region,
+                                    InitialPositionInStream.LATEST, batchInterval,
+                                    StorageLevel.MEMORY_AND_DISK_2()));
+      }
+      return ctx.union(receiverStreams.get(0), receiverStreams.subList(1, numReceivers));
+    }
+  }
+
+  /**
+   * Lines replayed from the files in a directory, in order by name, by one
+   * receiver. Files compressed with a codec that Hadoop knows, such as gzip,
+   * are decompressed. Lines are replayed at {@value #REPLAY_RATE_PROPERTY}
+   * lines per second, or as fast as they are accepted if that is 0, the
+   * default. The files are replayed {@value #REPLAY_PASSES_PROPERTY} times,
+   * once by default, or until the stream stops if that is 0.
+   *
+   * When the receiver restarts, as after a read error, it resumes after the
+   * last line that it stored. If its executor is lost, though, the receiver
+   * starts over from the first file on another executor, so lines that were
+   * already stored are replayed again.
+   */
+  static class Replay extends LogSource {
+
+    private final String dir;
+
+    Replay(String dir) {
+      this.dir = dir;
+    }
+
+    @Override
+    JavaDStream<byte[]> createStream(JavaStreamingContext ctx, Duration batchInterval) {
+      SparkConf conf = ctx.sparkContext().getConf();
+      return ctx.receiverStream(new ReplayReceiver(dir, conf.getInt(REPLAY_RATE_PROPERTY, 0),
+                                                   conf.getInt(REPLAY_PASSES_PROPERTY, 1)));
+    }
+  }
+
+  private static class ReplayReceiver extends Receiver<byte[]> {
+
+    private static final int PERMITS_PER_ACQUIRE = 64;
+
+    private final String dir;
+    private final int rate;
+    private final int passes;
+    // Progress, kept across restarts, which reuse the receiver, so that a
+    // restart resumes where the last attempt stopped: the pass, the file
+    // being replayed, if any, and the lines stored from it
+    private transient int pass;
+    private transient Path file;
+    private transient long fileLines;
+
+    ReplayReceiver(String dir, int rate, int passes) {
+      super(StorageLevel.MEMORY_AND_DISK_SER());
+      this.dir = dir;
+      this.rate = rate;
+      this.passes = passes;
+    }
+
+    @Override
+    public void onStart() {
+      Thread thread = new Thread(this::replay, "log-replay");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void onStop() {
+      // The replay thread stops on its own
+    }
+
+    private void replay() {
+      TokenBucket rateLimiter = rate > 0 ?
+        new TokenBucket(rate, Math.max(PERMITS_PER_ACQUIRE, rate / 10.0)) : null;
+      Configuration conf = new Configuration();
+      CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+      Text line = new Text();
+      long count = 0L;
+      try {
+        FileSystem fs = new Path(dir).getFileSystem(conf);
+        FileStatus[] files = fs.listStatus(new Path(dir));
+        Arrays.sort(files);
+        for (; passes == 0 || pass < passes; pass++) {
+          for (FileStatus status : files) {
+            // Files are in order by path, so skip the ones already replayed
+            if (!status.isFile() || (file != null && status.getPath().compareTo(file) < 0)) {
+              continue;
+            }
+            if (!status.getPath().equals(file)) {
+              file = status.getPath();
+              fileLines = 0L;
+            }
+            CompressionCodec codec = codecs.getCodec(file);
+            try (InputStream in = codec == null ? fs.open(file) :
+                 codec.createInputStream(fs.open(file))) {
+              LineReader reader = new LineReader(in, conf);
+              long skip = fileLines;
+              while (!isStopped() && reader.readLine(line) > 0) {
+                if (skip > 0L) {
+                  skip--;
+                  continue;
+                }
+                if (rateLimiter != null && count++ % PERMITS_PER_ACQUIRE == 0L) {
+                  rateLimiter.acquire(PERMITS_PER_ACQUIRE);
+                }
+                store(line.copyBytes());
+                fileLines++;
+              }
+            }
+            if (isStopped()) {
+              return;
+            }
+          }
+          file = null;
+        }
+      } catch (IOException e) {
+        restart("Failed to replay log files in " + dir, e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Lines from a queue of RDDs, one RDD for each batch. Once the queue is
+   * empty, batches are empty.
+   */
+  static class InMemory extends LogSource {
+
+    private final Queue<JavaRDD<byte[]>> queue;
+
+    InMemory(Queue<JavaRDD<byte[]>> queue) {
+      this.queue = queue;
+    }
+
+    @Override
+    JavaDStream<byte[]> createStream(JavaStreamingContext ctx, Duration batchInterval) {
+      return ctx.queueStream(queue, true);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe map that evicts the least recently used entry when
+ * full. Large caches are split by key hash into segments, each locked and
+ * evicted on its own, so that threads looking up different keys seldom wait
+ * for each other; eviction is then least recently used within a segment,
+ * which is close to it overall. Caches of fewer than
+ * {@value #MIN_SEGMENT_SIZE} * 2 entries are one segment, and evict exactly.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class LruCache<K, V> {
+
+  static final int MAX_SEGMENTS = 64;
+  static final int MIN_SEGMENT_SIZE = 1024;
+
+  private final Map<K, V>[] segments;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxSize maximum number of entries
+   */
+  @SuppressWarnings("unchecked")
+  LruCache(int maxSize) {
+    int numSegments = Math.min(MAX_SEGMENTS,
+                               Integer.highestOneBit(Math.max(1, maxSize / MIN_SEGMENT_SIZE)));
+    segments = new Map[numSegments];
+    for (int i = 0; i < numSegments; i++) {
+      int segmentSize = maxSize / numSegments + (i < maxSize % numSegments ? 1 : 0);
+      segments[i] = new LinkedHashMap<K, V>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+          return size() > segmentSize;
+        }
+      };
+    }
+  }
+
+  private Map<K, V> segmentFor(K key) {
+    int h = key.hashCode();
+    // Spread the high bits down, since only the low bits pick the segment
+    h ^= h >>> 16;
+    return segments[h & (segments.length - 1)];
+  }
+
+  /**
+   * Gets a cached value.
+   *
+   * @param key key
+   * @return value, or null if not cached
+   */
+  V get(K key) {
+    Map<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.get(key);
+    }
+  }
+
+  /**
+   * Caches a value.
+   *
+   * @param key key
+   * @param value value
+   */
+  void put(K key, V value) {
+    Map<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      segment.put(key, value);
+    }
+  }
+
+  /**
+   * @return number of cached entries
+   */
+  int size() {
+    int size = 0;
+    for (Map<K, V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A sink that writes log lines to an output stream, one per line.
+ */
+public class OutputStreamLogSink implements LogSink {
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private final OutputStream out;
+
+  /**
+   * Creates a new sink. The stream is closed when the sink is closed.
+   *
+   * @param out output stream
+   */
+  public OutputStreamLogSink(OutputStream out) {
+    this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+  }
+
+  @Override
+  public synchronized void write(byte[] line, int offset, int length) throws IOException {
+    out.write(line, offset, length);
+    out.write('\n');
+  }
+
+  @Override
+  public synchronized void writeLines(byte[] lines, int offset, int length)
+    throws IOException {
+    out.write(lines, offset, length);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,205 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import java.io.Serializable;
+import org.apache.spark.SparkContext;
+import org.apache.spark.streaming.scheduler.BatchInfo;
+import org.apache.spark.streaming.scheduler.StreamingListener;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchCompleted;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchSubmitted;
+import org.apache.spark.streaming.scheduler.StreamingListenerOutputOperationCompleted;
+import org.apache.spark.streaming.scheduler.StreamingListenerOutputOperationStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverError;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverStopped;
+import org.apache.spark.util.LongAccumulator;
+
+/**
+ * Metrics for {@link LogProcessor}. Tasks time the parse, anonymize and
+ * categorize stages for one record in {@value #SAMPLE_INTERVAL}, in
+ * nanoseconds, and note how long before the batch time each sampled record
+ * was generated. Accumulators carry these to the driver, which at the end of
+ * each batch adds them to histograms in a metric registry; the generation
+ * times become the latency from generation until the batch is written, in
+ * milliseconds. A streaming listener records the size and delays of each
+ * batch.
+ */
+class ProcessorMetrics implements Serializable {
+
+  static final int SAMPLE_INTERVAL = 16;
+
+  private final LongAccumulator ipCacheHits;
+  private final LongAccumulator ipCacheMisses;
+  private final HistogramAccumulator parseTimes = new HistogramAccumulator();
+  private final HistogramAccumulator anonymizeTimes = new HistogramAccumulator();
+  private final HistogramAccumulator categorizeTimes = new HistogramAccumulator();
+  private final HistogramAccumulator generationAges = new HistogramAccumulator();
+
+  // Driver-side totals
+  private final transient LatencyHistogram parseNanos = new LatencyHistogram();
+  private final transient LatencyHistogram anonymizeNanos = new LatencyHistogram();
+  private final transient LatencyHistogram categorizeNanos = new LatencyHistogram();
+  private final transient LatencyHistogram endToEndMillis = new LatencyHistogram();
+  private final transient LatencyHistogram batchRecords = new LatencyHistogram();
+  private final transient LatencyHistogram schedulingDelayMillis = new LatencyHistogram();
+  private final transient LatencyHistogram processingDelayMillis = new LatencyHistogram();
+
+  /**
+   * Creates new metrics, registering their accumulators.
+   *
+   * @param sc Spark context
+   */
+  ProcessorMetrics(SparkContext sc) {
+    ipCacheHits = sc.longAccumulator("IP cache hits");
+    ipCacheMisses = sc.longAccumulator("IP cache misses");
+    sc.register(parseTimes, "Parse times");
+    sc.register(anonymizeTimes, "Anonymize times");
+    sc.register(categorizeTimes, "Categorize times");
+    sc.register(generationAges, "Generation ages");
+  }
+
+  LongAccumulator getIpCacheHits() {
+    return ipCacheHits;
+  }
+
+  LongAccumulator getIpCacheMisses() {
+    return ipCacheMisses;
+  }
+
+  /**
+   * Records the timings for a sampled record. Called by tasks.
+   *
+   * @param parseTime time to parse, in nanoseconds
+   * @param anonymizeTime time to anonymize, in nanoseconds
+   * @param categorizeTime time to categorize, in nanoseconds
+   * @param generationAge milliseconds from generation to the batch time, or
+   * a negative number if the generation time is unknown
+   */
+  void recordSample(long parseTime, long anonymizeTime, long categorizeTime,
+                    long generationAge) {
+    parseTimes.record(parseTime);
+    anonymizeTimes.record(anonymizeTime);
+    categorizeTimes.record(categorizeTime);
+    if (generationAge >= 0L) {
+      generationAges.record(generationAge);
+    }
+  }
+
+  /**
+   * Registers the driver-side metrics.
+   *
+   * @param registry metric registry
+   */
+  void register(MetricRegistry registry) {
+    LogMetrics.register(registry, "processor.parse.ns", parseNanos);
+    LogMetrics.register(registry, "processor.anonymize.ns", anonymizeNanos);
+    LogMetrics.register(registry, "processor.categorize.ns", categorizeNanos);
+    LogMetrics.register(registry, "processor.end-to-end.ms", endToEndMillis);
+    LogMetrics.register(registry, "processor.batch.records", batchRecords);
+    LogMetrics.register(registry, "processor.batch.scheduling-delay.ms", schedulingDelayMillis);
+    LogMetrics.register(registry, "processor.batch.processing-delay.ms", processingDelayMillis);
+    registry.register("processor.ip-cache.hits", (Gauge<Long>) ipCacheHits::sum);
+    registry.register("processor.ip-cache.misses", (Gauge<Long>) ipCacheMisses::sum);
+  }
+
+  /**
+   * Collects the samples from a batch once its output is written. Called on
+   * the driver after the batch's other output operations.
+   *
+   * @param batchTime batch time, in milliseconds since the epoch
+   */
+  void completeBatch(long batchTime) {
+    parseNanos.add(parseTimes.value(), 0L);
+    anonymizeNanos.add(anonymizeTimes.value(), 0L);
+    categorizeNanos.add(categorizeTimes.value(), 0L);
+    endToEndMillis.add(generationAges.value(), System.currentTimeMillis() - batchTime);
+    parseTimes.reset();
+    anonymizeTimes.reset();
+    categorizeTimes.reset();
+    generationAges.reset();
+  }
+
+  LatencyHistogram getBatchRecords() {
+    return batchRecords;
+  }
+
+  LatencyHistogram getSchedulingDelays() {
+    return schedulingDelayMillis;
+  }
+
+  LatencyHistogram getProcessingDelays() {
+    return processingDelayMillis;
+  }
+
+  /**
+   * Gets a listener that records the size and delays of each batch.
+   *
+   * @return streaming listener
+   */
+  StreamingListener listener() {
+    return new BatchListener();
+  }
+
+  private class BatchListener implements StreamingListener {
+
+    @Override
+    public void onBatchCompleted(StreamingListenerBatchCompleted batchCompleted) {
+      BatchInfo info = batchCompleted.batchInfo();
+      batchRecords.record(info.numRecords());
+      if (info.schedulingDelay().isDefined()) {
+        schedulingDelayMillis.record((Long) info.schedulingDelay().get());
+      }
+      if (info.processingDelay().isDefined()) {
+        processingDelayMillis.record((Long) info.processingDelay().get());
+      }
+    }
+
+    @Override
+    public void onReceiverStarted(StreamingListenerReceiverStarted receiverStarted) {
+    }
+
+    @Override
+    public void onReceiverError(StreamingListenerReceiverError receiverError) {
+    }
+
+    @Override
+    public void onReceiverStopped(StreamingListenerReceiverStopped receiverStopped) {
+    }
+
+    @Override
+    public void onBatchSubmitted(StreamingListenerBatchSubmitted batchSubmitted) {
+    }
+
+    @Override
+    public void onBatchStarted(StreamingListenerBatchStarted batchStarted) {
+    }
+
+    @Override
+    public void onOutputOperationStarted(
+      StreamingListenerOutputOperationStarted outputOperationStarted) {
+    }
+
+    @Override
+    public void onOutputOperationCompleted(
+      StreamingListenerOutputOperationCompleted outputOperationCompleted) {
+    }
+  }
+}
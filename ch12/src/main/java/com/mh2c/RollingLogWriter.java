@@ -0,0 +1,150 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.spark.SerializableWritable;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.streaming.Time;
+import scala.Tuple2;
+
+/**
+ * Writes keyed records as text, in the same "key, record" lines as Hadoop's
+ * text output format, into segments that {@link LogCompactor} rolls into
+ * large files. Each batch is written to a staging directory, cleared first of
+ * anything an earlier attempt at the batch left behind. Each task attempt
+ * writes its part to a file of its own under {@value #TEMP_DIR} and renames
+ * it into place, so that only one attempt's file lands for each part, and
+ * once the batch is written the driver commits it by renaming the directory
+ * into {@value #SEGMENTS_DIR}. A batch that is written again after it was
+ * committed is discarded, so each batch lands exactly once.
+ *
+ * Segments are rolled once they reach {@value #ROLL_SIZE_PROPERTY} bytes in
+ * all, by default {@value #DEFAULT_ROLL_SIZE}, or once the oldest is
+ * {@value #ROLL_INTERVAL_PROPERTY} milliseconds old, by default
+ * {@value #DEFAULT_ROLL_INTERVAL}. Directories starting with an underscore
+ * are hidden from Hadoop jobs, so records appear to readers as they are
+ * rolled.
+ */
+class RollingLogWriter implements Serializable {
+
+  static final String ROLL_SIZE_PROPERTY = "spark.mh2c.output.roll.size";
+  static final String ROLL_INTERVAL_PROPERTY = "spark.mh2c.output.roll.interval";
+  static final long DEFAULT_ROLL_SIZE = 128L * 1024L * 1024L;
+  static final long DEFAULT_ROLL_INTERVAL = 600000L;
+
+  static final String SEGMENTS_DIR = "_segments";
+  static final String STAGING_DIR = "_staging";
+  static final String TEMP_DIR = "_temporary";
+  static final String SUCCESS_MARKER = "_SUCCESS";
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private final String outputDir;
+  private final Broadcast<SerializableWritable<Configuration>> hadoopConf;
+
+  /**
+   * Creates a new writer, which writes with the Hadoop configuration of a
+   * Spark context.
+   *
+   * @param sc Spark context
+   * @param outputDir output directory
+   */
+  RollingLogWriter(JavaSparkContext sc, String outputDir) {
+    this.outputDir = outputDir;
+    this.hadoopConf = sc.broadcast(new SerializableWritable<>(sc.hadoopConfiguration()));
+  }
+
+  /**
+   * Writes a batch of records and commits it.
+   *
+   * @param records records by key
+   * @param time batch time
+   * @throws IOException if the batch cannot be committed
+   */
+  void write(JavaPairRDD<String, ApacheLogRecord> records, Time time) throws IOException {
+    String stagingDir = outputDir + "/" + STAGING_DIR + "/" + time.milliseconds();
+    Broadcast<SerializableWritable<Configuration>> hadoopConf = this.hadoopConf;
+    // Parts left by an earlier attempt at the batch would be committed too
+    Path staging = new Path(stagingDir);
+    staging.getFileSystem(hadoopConf.value().value()).delete(staging, true);
+    records.foreachPartition(partition -> writePartition(partition, stagingDir,
+                                                         hadoopConf.value().value()));
+    commit(time.milliseconds());
+  }
+
+  private static void writePartition(Iterator<Tuple2<String, ApacheLogRecord>> partition,
+                                     String stagingDir, Configuration conf)
+    throws IOException {
+    if (!partition.hasNext()) {
+      return;
+    }
+    Path file = new Path(stagingDir, String.format("part-%05d", TaskContext.getPartitionId()));
+    Path temp = new Path(stagingDir + "/" + TEMP_DIR,
+                         file.getName() + "-" + TaskContext.get().attemptNumber());
+    FileSystem fs = file.getFileSystem(conf);
+    try (OutputStream out = new BufferedOutputStream(fs.create(temp, true), BUFFER_SIZE)) {
+      while (partition.hasNext()) {
+        Tuple2<String, ApacheLogRecord> record = partition.next();
+        out.write(record._1().getBytes(StandardCharsets.UTF_8));
+        out.write('\t');
+        out.write(record._2().toString().getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+      }
+    }
+    // Another attempt, such as a speculative one, may have written the part
+    // already; its records are the same
+    if (!fs.rename(temp, file)) {
+      fs.delete(temp, false);
+    }
+  }
+
+  /**
+   * Moves a written batch into the segments, unless it is already there.
+   */
+  private void commit(long batchTime) throws IOException {
+    Path staged = new Path(outputDir + "/" + STAGING_DIR, Long.toString(batchTime));
+    Path committed = new Path(outputDir + "/" + SEGMENTS_DIR, Long.toString(batchTime));
+    FileSystem fs = staged.getFileSystem(hadoopConf.value().value());
+    if (!fs.exists(staged)) {
+      // Nothing to write
+      return;
+    }
+    if (fs.exists(committed)) {
+      fs.delete(staged, true);
+      return;
+    }
+    // Drop what failed attempts left
+    fs.delete(new Path(staged, TEMP_DIR), true);
+    fs.create(new Path(staged, SUCCESS_MARKER), true).close();
+    fs.mkdirs(committed.getParent());
+    if (!fs.rename(staged, committed)) {
+      throw new IOException("Failed to commit " + staged + " to " + committed);
+    }
+  }
+}
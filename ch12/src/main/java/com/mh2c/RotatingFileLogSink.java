@@ -0,0 +1,106 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A sink that writes log lines to a series of files in a directory, named
+ * "prefix-00000.log", "prefix-00001.log" and so on. A new file is started
+ * once the current one would grow past a maximum size; files only hold
+ * whole lines. Existing files are never overwritten; numbering skips past
+ * them, so a rerun into the same directory adds to earlier output.
+ */
+public class RotatingFileLogSink implements LogSink {
+
+  static final long DEFAULT_MAX_FILE_BYTES = 128L * 1024L * 1024L;
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private final Path dir;
+  private final String prefix;
+  private final long maxFileBytes;
+
+  private OutputStream out;
+  private int fileIndex;
+  private long fileBytes;
+
+  /**
+   * Creates a new sink, creating the directory if necessary.
+   *
+   * @param dir directory for files
+   * @param prefix prefix for file names
+   * @param maxFileBytes maximum size of each file, unless it holds a single
+   * larger write
+   * @throws IOException if the directory cannot be created
+   */
+  public RotatingFileLogSink(Path dir, String prefix, long maxFileBytes) throws IOException {
+    this.dir = Files.createDirectories(dir);
+    this.prefix = prefix;
+    this.maxFileBytes = maxFileBytes;
+  }
+
+  @Override
+  public synchronized void write(byte[] line, int offset, int length) throws IOException {
+    prepare(length + 1);
+    out.write(line, offset, length);
+    out.write('\n');
+    fileBytes += length + 1;
+  }
+
+  @Override
+  public synchronized void writeLines(byte[] lines, int offset, int length)
+    throws IOException {
+    prepare(length);
+    out.write(lines, offset, length);
+    fileBytes += length;
+  }
+
+  /**
+   * Makes sure that a file is open with room for the given number of bytes.
+   */
+  private void prepare(int length) throws IOException {
+    if (out != null && fileBytes > 0L && fileBytes + length > maxFileBytes) {
+      out.close();
+      out = null;
+    }
+    while (out == null) {
+      Path file = dir.resolve(String.format("%s-%05d.log", prefix, fileIndex++));
+      try {
+        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE_NEW,
+                                                             StandardOpenOption.WRITE),
+                                       BUFFER_SIZE);
+      } catch (FileAlreadyExistsException e) {
+        continue;
+      }
+      fileBytes = 0L;
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+  }
+}
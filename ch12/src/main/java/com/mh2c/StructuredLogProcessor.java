@@ -0,0 +1,225 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.count;
+import static org.apache.spark.sql.functions.sum;
+import static org.apache.spark.sql.functions.window;
+
+import com.codahale.metrics.MetricRegistry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.serializer.KryoSerializer;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.encoders.RowEncoder;
+import org.apache.spark.sql.streaming.ProcessingTime;
+import org.apache.spark.sql.streaming.StreamingQueryException;
+import org.apache.spark.sql.streaming.StreamingQueryListener;
+import org.apache.spark.sql.streaming.Trigger;
+
+/**
+ * A Structured Streaming job that reads Apache log lines from files as they
+ * appear in a directory, processes them like {@link LogProcessor}, and
+ * writes the results to Hadoop. Lines are parsed straight into rows with
+ * the schema of {@link ColumnarLogWriter}, and written in the same
+ * partitioned layout, as Parquet files or as ORC files when
+ * {@value ColumnarLogWriter#FORMAT_PROPERTY} is "orc".
+ *
+ * Request and byte totals by resource, status and user agent category are
+ * kept for windows of {@value LogAggregator#WINDOW_PROPERTY} milliseconds,
+ * sliding every {@value LogAggregator#SLIDE_PROPERTY} milliseconds, in
+ * terms of the time of each request rather than when it arrives. Requests
+ * arriving up to {@value #WATERMARK_PROPERTY} late, by default
+ * {@value #DEFAULT_WATERMARK}, are still counted; older state is dropped.
+ * Each window's totals are written once the watermark passes its end. Query
+ * progress is checkpointed under
+ * {@value LogAggregator#CHECKPOINT_DIR_PROPERTY}.
+ *
+ * The records and the totals are separate queries over the same source, and
+ * a streaming query cannot be cached, so every line is read, parsed,
+ * anonymized and categorized twice, once for each. With totals turned on,
+ * expect about twice the processing of {@link LogProcessor}, and IP cache
+ * hits and misses counted twice.
+ *
+ * Metrics from {@link ProcessorMetrics} are collected after each
+ * micro-batch and reported as by {@link LogProcessor}.
+ */
+public class StructuredLogProcessor {
+
+  private static final String APP_NAME = "ApacheAccessLogStructuredProcessor";
+
+  static final String WATERMARK_PROPERTY = "spark.mh2c.structured.watermark";
+  static final String DEFAULT_WATERMARK = "10 minutes";
+
+  /**
+   * Processes files in a directory.
+   *
+   * @param inputDir directory where log files appear
+   * @param triggerInterval interval between micro-batches, in milliseconds
+   * @param hadoopDir directory in Hadoop where files are written
+   * @throws StreamingQueryException if processing fails
+   * @throws IOException if metrics reporters cannot be stopped
+   */
+  public void process(String inputDir, int triggerInterval, String hadoopDir)
+    throws StreamingQueryException, IOException {
+
+    SparkConf conf = new SparkConf().setAppName(APP_NAME);
+    // Serialize shared objects compactly with Kryo, unless told otherwise
+    conf.setIfMissing("spark.serializer", KryoSerializer.class.getName());
+    conf.setIfMissing("spark.kryo.registrator", LogProcessorKryoRegistrator.class.getName());
+    SparkSession spark = SparkSession.builder().config(conf).getOrCreate();
+    JavaSparkContext sc = JavaSparkContext.fromSparkContext(spark.sparkContext());
+
+    String outputFormat = conf.get(ColumnarLogWriter.FORMAT_PROPERTY, ColumnarLogWriter.PARQUET);
+    if (!outputFormat.equals(ColumnarLogWriter.PARQUET) &&
+        !outputFormat.equals(ColumnarLogWriter.ORC)) {
+      throw new IllegalArgumentException("Unsupported output format " + outputFormat);
+    }
+    String checkpointDir = conf.get(LogAggregator.CHECKPOINT_DIR_PROPERTY,
+                                    hadoopDir + "-checkpoint");
+    Trigger trigger = ProcessingTime.create(triggerInterval, TimeUnit.MILLISECONDS);
+
+    // Share one anonymization cache among all tasks on each executor
+    IpAnonymizer anonymizer =
+      IpAnonymizer.create(conf.get(IpAnonymizer.ANONYMIZER_PROPERTY,
+                                   IpAnonymizer.DEFAULT_ANONYMIZER),
+                          conf.get(IpAnonymizer.KEY_PROPERTY, null));
+    Broadcast<IpAnonymizationCache> ipCache = sc.broadcast(
+      new IpAnonymizationCache(anonymizer, conf.getInt(IpAnonymizationCache.SIZE_PROPERTY,
+                                                       IpAnonymizationCache.DEFAULT_SIZE)));
+    ProcessorMetrics metrics = new ProcessorMetrics(sc.sc());
+    Broadcast<UserAgentClassifier> userAgentClassifier = sc.broadcast(
+      new UserAgentClassifier(conf.get(UserAgentClassifier.RULES_PROPERTY,
+                                       UserAgentClassifier.DEFAULT_RULES),
+                              conf.getInt(UserAgentClassifier.CACHE_SIZE_PROPERTY,
+                                          UserAgentClassifier.DEFAULT_CACHE_SIZE)));
+
+    // Parse each line straight into a row in Spark's binary format
+    Dataset<Row> records = spark.readStream()
+      .textFile(inputDir)
+      .mapPartitions(lines -> {
+        Iterator<ApacheLogRecord> processed =
+          LogProcessor.processPartition(map(lines, line -> line.getBytes(StandardCharsets.UTF_8)),
+                                        ipCache.value(), userAgentClassifier.value(), metrics,
+                                        System.currentTimeMillis());
+        return map(processed, ColumnarLogWriter::toRow);
+      }, RowEncoder.apply(ColumnarLogWriter.SCHEMA));
+
+    records.writeStream()
+      .queryName("records")
+      .format(outputFormat)
+      .partitionBy(ColumnarLogWriter.HOUR_COLUMN)
+      .option("checkpointLocation", checkpointDir + "/records")
+      .trigger(trigger)
+      .start(hadoopDir);
+
+    // Total requests by when they were made, bounding state with a watermark
+    long aggregateWindow = conf.getLong(LogAggregator.WINDOW_PROPERTY,
+                                        LogAggregator.DEFAULT_WINDOW);
+    if (aggregateWindow > 0L) {
+      long aggregateSlide = conf.getLong(LogAggregator.SLIDE_PROPERTY, triggerInterval);
+      records
+        .withWatermark("date_time", conf.get(WATERMARK_PROPERTY, DEFAULT_WATERMARK))
+        .groupBy(window(col("date_time"), aggregateWindow + " milliseconds",
+                        aggregateSlide + " milliseconds"),
+                 col("resource"), col("status"), col("user_agent"))
+        .agg(count("*").as("requests"), sum("bytes").as("bytes"))
+        .writeStream()
+        .queryName("aggregates")
+        .outputMode("append")
+        .format(outputFormat)
+        .option("checkpointLocation", checkpointDir + "/aggregates")
+        .trigger(trigger)
+        .start(hadoopDir + "-aggregates");
+    }
+
+    MetricRegistry registry = new MetricRegistry();
+    metrics.register(registry);
+    spark.streams().addListener(new MetricsListener(metrics));
+    try (Closeable reporters = LogMetrics.startReporters(registry, conf::get)) {
+      spark.streams().awaitAnyTermination();
+    } finally {
+      spark.stop();
+    }
+  }
+
+  /**
+   * Collects the samples taken by tasks once a micro-batch of records is
+   * written. There is no batch time to measure from, so end-to-end latency
+   * runs from generation until each partition is processed.
+   */
+  private static class MetricsListener extends StreamingQueryListener {
+
+    private final ProcessorMetrics metrics;
+
+    MetricsListener(ProcessorMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void onQueryStarted(QueryStartedEvent event) {
+    }
+
+    @Override
+    public void onQueryProgress(QueryProgressEvent event) {
+      if ("records".equals(event.progress().name())) {
+        metrics.getBatchRecords().record(event.progress().numInputRows());
+        metrics.completeBatch(System.currentTimeMillis());
+      }
+    }
+
+    @Override
+    public void onQueryTerminated(QueryTerminatedEvent event) {
+    }
+  }
+
+  /**
+   * Lazily applies a function to each element of an iterator.
+   */
+  private static <T, R> Iterator<R> map(Iterator<T> iterator, Function<T, R> function) {
+    return new Iterator<R>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public R next() {
+        return function.apply(iterator.next());
+      }
+    };
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 3) {
+      throw new IllegalArgumentException("Expected arguments: input directory, " +
+                                         "trigger interval in ms, HDFS output directory");
+    }
+
+    new StructuredLogProcessor().process(args[0], Integer.parseInt(args[1]), args[2]);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter. Tokens accumulate at a fixed rate, up to a
+ * maximum, and callers wait until enough tokens are available. Waiting
+ * callers are served one at a time.
+ */
+public class TokenBucket {
+
+  private final double tokensPerNano;
+  private final double capacity;
+  private double tokens;
+  private long lastRefill;
+
+  /**
+   * Creates a new bucket, initially full.
+   *
+   * @param tokensPerSecond rate at which tokens accumulate
+   * @param capacity maximum number of tokens, which limits bursts
+   */
+  public TokenBucket(double tokensPerSecond, double capacity) {
+    if (tokensPerSecond <= 0.0 || capacity < 1.0) {
+      throw new IllegalArgumentException("Rate must be positive and capacity at least 1");
+    }
+    this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1L);
+    this.capacity = capacity;
+    this.tokens = capacity;
+    this.lastRefill = System.nanoTime();
+  }
+
+  /**
+   * Takes tokens from the bucket, waiting until they have accumulated.
+   *
+   * @param permits number of tokens to take
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public synchronized void acquire(int permits) throws InterruptedException {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+    lastRefill = now;
+
+    // Go into debt, and wait for it to be paid off
+    tokens -= permits;
+    if (tokens < 0.0) {
+      TimeUnit.NANOSECONDS.sleep((long) (-tokens / tokensPerNano));
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Categorizes user agent strings with an ordered table of rules, each
+ * mapping a substring to a category. The first rule whose substring appears
+ * in a user agent string decides its category; strings matching no rule are
+ * categorized as {@value #OTHER}.
+ *
+ * The rules are compiled into an Aho-Corasick automaton, so each string is
+ * scanned once however many rules there are. Results are also cached, since
+ * a handful of user agent strings make up most traffic. Broadcast the
+ * classifier so that each executor keeps one cache for all of its tasks.
+ *
+ * Rules are read from the {@value #RULES_PROPERTY} Spark property, as
+ * comma-separated "substring=CATEGORY" pairs in order of precedence.
+ */
+class UserAgentClassifier implements Serializable {
+
+  static final String RULES_PROPERTY = "spark.mh2c.useragent.rules";
+  static final String DEFAULT_RULES =
+    "OPR=OPERA,Chrome=CHROME,Safari=SAFARI,Firefox=FIREFOX,Trident=IE";
+  static final String CACHE_SIZE_PROPERTY = "spark.mh2c.useragent.cache.size";
+  static final int DEFAULT_CACHE_SIZE = 10000;
+  static final String OTHER = "OTHER";
+
+  private static final int NO_MATCH = Integer.MAX_VALUE;
+
+  private final String[] categories;
+  // Maps characters that appear in rules to columns of the transition table;
+  // all other characters share column 0
+  private final int[] columns;
+  private final int numColumns;
+  private final int[] transitions;
+  // Lowest rule index matched on reaching each state
+  private final int[] matches;
+  private final int cacheSize;
+  private transient volatile LruCache<String, String> cache;
+
+  /**
+   * Creates a new classifier.
+   *
+   * @param rules comma-separated "substring=CATEGORY" pairs, in order of
+   * precedence
+   * @param cacheSize maximum number of cached results
+   * @throws IllegalArgumentException if the rules are malformed
+   */
+  UserAgentClassifier(String rules, int cacheSize) {
+    List<String> substrings = new ArrayList<>();
+    List<String> categoryList = new ArrayList<>();
+    for (String rule : rules.split(",")) {
+      int equals = rule.lastIndexOf('=');
+      if (equals <= 0 || equals == rule.length() - 1) {
+        throw new IllegalArgumentException("Malformed user agent rule: " + rule);
+      }
+      substrings.add(rule.substring(0, equals));
+      categoryList.add(rule.substring(equals + 1));
+    }
+    categories = categoryList.toArray(new String[0]);
+    this.cacheSize = cacheSize;
+
+    char maxChar = 0;
+    for (String substring : substrings) {
+      for (char c : substring.toCharArray()) {
+        maxChar = (char) Math.max(maxChar, c);
+      }
+    }
+    columns = new int[maxChar + 1];
+    int column = 0;
+    for (String substring : substrings) {
+      for (char c : substring.toCharArray()) {
+        if (columns[c] == 0) {
+          columns[c] = ++column;
+        }
+      }
+    }
+    numColumns = column + 1;
+
+    // Build a trie of the substrings, with -1 for missing transitions
+    List<int[]> trie = new ArrayList<>();
+    List<Integer> trieMatches = new ArrayList<>();
+    trie.add(newRow());
+    trieMatches.add(NO_MATCH);
+    for (int rule = 0; rule < substrings.size(); rule++) {
+      int state = 0;
+      for (char c : substrings.get(rule).toCharArray()) {
+        int[] row = trie.get(state);
+        if (row[columns[c]] < 0) {
+          row[columns[c]] = trie.size();
+          trie.add(newRow());
+          trieMatches.add(NO_MATCH);
+        }
+        state = row[columns[c]];
+      }
+      trieMatches.set(state, Math.min(trieMatches.get(state), rule));
+    }
+
+    // Fill in missing transitions by following failure links breadth first,
+    // turning the trie into a DFA, and pass matches along failure links
+    int numStates = trie.size();
+    transitions = new int[numStates * numColumns];
+    matches = new int[numStates];
+    int[] failure = new int[numStates];
+    Queue<Integer> queue = new ArrayDeque<>();
+    matches[0] = trieMatches.get(0);
+    for (int c = 0; c < numColumns; c++) {
+      int next = trie.get(0)[c];
+      if (next < 0) {
+        transitions[c] = 0;
+      } else {
+        transitions[c] = next;
+        failure[next] = 0;
+        queue.add(next);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.remove();
+      matches[state] = Math.min(trieMatches.get(state), matches[failure[state]]);
+      for (int c = 0; c < numColumns; c++) {
+        int next = trie.get(state)[c];
+        int fallback = transitions[failure[state] * numColumns + c];
+        if (next < 0) {
+          transitions[state * numColumns + c] = fallback;
+        } else {
+          transitions[state * numColumns + c] = next;
+          failure[next] = fallback;
+          queue.add(next);
+        }
+      }
+    }
+  }
+
+  private int[] newRow() {
+    int[] row = new int[numColumns];
+    Arrays.fill(row, -1);
+    return row;
+  }
+
+  /**
+   * Categorizes a user agent string.
+   *
+   * @param userAgent user agent string
+   * @return category
+   */
+  String categorize(String userAgent) {
+    LruCache<String, String> cache = getCache();
+    String category = cache.get(userAgent);
+    if (category == null) {
+      category = scan(userAgent);
+      cache.put(userAgent, category);
+    }
+    return category;
+  }
+
+  private String scan(String userAgent) {
+    int state = 0;
+    int best = NO_MATCH;
+    for (int i = 0; i < userAgent.length(); i++) {
+      char c = userAgent.charAt(i);
+      int column = c < columns.length ? columns[c] : 0;
+      state = transitions[state * numColumns + column];
+      if (matches[state] < best) {
+        best = matches[state];
+        if (best == 0) {
+          // Nothing can take precedence over the first rule
+          break;
+        }
+      }
+    }
+    return best == NO_MATCH ? OTHER : categories[best];
+  }
+
+  private LruCache<String, String> getCache() {
+    // Checked again under the lock, so that lookups only read the field once
+    // the cache exists
+    LruCache<String, String> result = cache;
+    if (result == null) {
+      synchronized (this) {
+        result = cache;
+        if (result == null) {
+          result = new LruCache<>(cacheSize);
+          cache = result;
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,277 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.spark.HashPartitioner;
+import org.apache.spark.api.java.Optional;
+import org.apache.spark.streaming.Duration;
+import org.apache.spark.streaming.State;
+import org.apache.spark.streaming.StateSpec;
+import org.apache.spark.streaming.api.java.JavaDStream;
+import org.apache.spark.streaming.api.java.JavaPairDStream;
+import scala.Tuple2;
+
+/**
+ * Counts distinct visitors to each resource in buckets of time, by the time
+ * of each request, with {@link HyperLogLog} sketches of the anonymized IP
+ * addresses. Anonymized addresses are already hashes, so their leading bits
+ * go straight into the sketches. Each batch sketches the addresses for each
+ * resource and bucket before shuffling, so only one sketch per key crosses
+ * the network, and merges it into a sketch kept for the key across batches.
+ * Kept sketches are checkpointed, so the streaming context must have a
+ * checkpoint directory.
+ *
+ * Each batch writes out the kept sketch of every key that it saw requests
+ * for, so the latest counts are available as soon as a batch completes. A
+ * key's sketch is written again whenever it changes; since merging a sketch
+ * into one it is already part of changes nothing, readers simply merge all
+ * the sketches for a key. Once a key has seen no requests for a timeout,
+ * its sketch is dropped, and requests for it that arrive later start a new
+ * sketch, which merges in the same way without counting any visitor twice.
+ *
+ * Each batch writes one small text file of sketches, one line per key, of
+ * the form "resource, bucket start, estimate, sketch" separated by tabs. The
+ * sketch is in the binary form of {@link HyperLogLog}, encoded in Base64.
+ * {@link #main(String[])} merges the sketches in such files over a range of
+ * time.
+ */
+public class VisitorCounter implements Serializable {
+
+  static final String BUCKET_PROPERTY = "spark.mh2c.visitors.bucket";
+  static final String PRECISION_PROPERTY = "spark.mh2c.visitors.precision";
+  static final String TIMEOUT_PROPERTY = "spark.mh2c.visitors.timeout";
+  static final long DEFAULT_BUCKET = 3600000L;
+  static final int DEFAULT_PRECISION = 12;
+  static final long DEFAULT_TIMEOUT = 300000L;
+
+  private final long bucket;
+  private final int precision;
+  private final Duration timeout;
+
+  /**
+   * Creates a new counter. The timeout must be a multiple of the streaming
+   * batch interval.
+   *
+   * @param bucket length of each time bucket, in milliseconds
+   * @param precision precision of the sketches
+   * @param timeout how long to keep a sketch without requests, in
+   * milliseconds
+   * @throws IllegalArgumentException if the bucket or timeout is not
+   * positive, or the precision is out of range
+   */
+  VisitorCounter(long bucket, int precision, long timeout) {
+    if (bucket <= 0L || timeout <= 0L) {
+      throw new IllegalArgumentException("Bucket and timeout must be positive");
+    }
+    if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be from " +
+                                         HyperLogLog.MIN_PRECISION + " to " +
+                                         HyperLogLog.MAX_PRECISION);
+    }
+    this.bucket = bucket;
+    this.precision = precision;
+    this.timeout = new Duration(timeout);
+  }
+
+  /**
+   * Sketches the visitors to each resource in each bucket.
+   *
+   * @param records records, with anonymized IP addresses
+   * @return sketches by key, each time they change
+   */
+  JavaPairDStream<String, HyperLogLog> count(JavaDStream<ApacheLogRecord> records) {
+    int numPartitions = records.context().sparkContext().defaultParallelism();
+    JavaDStream<Optional<Tuple2<String, HyperLogLog>>> completed = records
+      .mapToPair(record -> new Tuple2<>(key(record), hash(record.getIpAddress())))
+      // Sketch before the shuffle, so each key's traffic shrinks to one sketch
+      .combineByKey(this::newSketch, HyperLogLog::add, HyperLogLog::merge,
+                    new HashPartitioner(numPartitions))
+      .mapWithState(StateSpec.function(VisitorCounter::update)
+                    .numPartitions(numPartitions)
+                    .timeout(timeout));
+    return JavaPairDStream.fromJavaDStream(completed.filter(Optional::isPresent)
+                                           .map(Optional::get));
+  }
+
+  private HyperLogLog newSketch(long hash) {
+    return new HyperLogLog(precision).add(hash);
+  }
+
+  /**
+   * Merges a batch's sketch for a key into the kept one and hands back the
+   * result. Nothing is handed back when the key times out, since its sketch
+   * was already handed back when it last changed.
+   */
+  static Optional<Tuple2<String, HyperLogLog>> update(
+    String key, Optional<HyperLogLog> batchSketch, State<HyperLogLog> state) {
+
+    if (state.isTimingOut()) {
+      return Optional.empty();
+    }
+    // The batch's sketch is new, while the kept one may be shared with an
+    // earlier batch's state
+    HyperLogLog sketch = batchSketch.get();
+    if (state.exists()) {
+      sketch.merge(state.get());
+    }
+    state.update(sketch);
+    return Optional.of(new Tuple2<>(key, sketch));
+  }
+
+  /**
+   * Writes sketches as one text file per batch.
+   *
+   * @param sketches sketches by key
+   * @param prefix prefix for output directories
+   */
+  void save(JavaPairDStream<String, HyperLogLog> sketches, String prefix) {
+    sketches.mapValues(VisitorCounter::format)
+      .transformToPair(rdd -> rdd.coalesce(1))
+      .saveAsHadoopFiles(prefix, "txt", Text.class, Text.class, TextOutputFormat.class);
+  }
+
+  /**
+   * Gets the key for a record, made of its resource and the start of its
+   * time bucket.
+   */
+  String key(ApacheLogRecord record) {
+    long time = record.getDateTime().toInstant().toEpochMilli();
+    long bucketStart = time - Math.floorMod(time, bucket);
+    return record.getResource() + "\t" + Instant.ofEpochMilli(bucketStart);
+  }
+
+  private static String format(HyperLogLog sketch) {
+    return sketch.estimate() + "\t" + Base64.getEncoder().encodeToString(sketch.toBytes());
+  }
+
+  /**
+   * Gets a 64-bit hash for an anonymized IP address from the leading
+   * characters of its Base64 encoding. Addresses that are not encoded that
+   * way are hashed from their characters.
+   */
+  static long hash(String anonymizedIpAddress) {
+    // 11 characters of 6 bits each fill a long
+    long hash = 0L;
+    for (int i = 0; i < 11; i++) {
+      int bits = i < anonymizedIpAddress.length() ?
+        base64Value(anonymizedIpAddress.charAt(i)) : -1;
+      if (bits < 0) {
+        return mix(anonymizedIpAddress.hashCode());
+      }
+      hash = (hash << 6) | bits;
+    }
+    return hash;
+  }
+
+  private static int base64Value(char c) {
+    if (c >= 'A' && c <= 'Z') {
+      return c - 'A';
+    }
+    if (c >= 'a' && c <= 'z') {
+      return c - 'a' + 26;
+    }
+    if (c >= '0' && c <= '9') {
+      return c - '0' + 52;
+    }
+    if (c == '+') {
+      return 62;
+    }
+    if (c == '/') {
+      return 63;
+    }
+    return -1;
+  }
+
+  /**
+   * Spreads the bits of a 32-bit hash over 64 bits (the finalizer of
+   * MurmurHash3).
+   */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Merges the sketches in files written by the counter, and prints the
+   * estimated distinct visitors to each resource, and overall, between two
+   * times.
+   *
+   * @param args file path or glob, start time inclusive, end time exclusive;
+   * times are ISO-8601 instants, such as 2017-01-01T00:00:00Z
+   * @throws Exception if the files cannot be read
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length != 3) {
+      throw new IllegalArgumentException("Expected arguments: sketch file path or glob, " +
+                                         "start time, end time");
+    }
+    Instant start = Instant.parse(args[1]);
+    Instant end = Instant.parse(args[2]);
+
+    Map<String, HyperLogLog> byResource = new TreeMap<>();
+    HyperLogLog overall = null;
+    Configuration conf = new Configuration();
+    Path path = new Path(args[0]);
+    FileSystem fs = path.getFileSystem(conf);
+    FileStatus[] files = fs.globStatus(path);
+    for (FileStatus file : files == null ? new FileStatus[0] : files) {
+      try (BufferedReader reader = new BufferedReader(
+             new InputStreamReader(fs.open(file.getPath()), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] fields = line.split("\t");
+          if (fields.length != 4) {
+            continue;
+          }
+          Instant bucketStart = Instant.parse(fields[1]);
+          if (bucketStart.isBefore(start) || !bucketStart.isBefore(end)) {
+            continue;
+          }
+          HyperLogLog sketch = HyperLogLog.fromBytes(Base64.getDecoder().decode(fields[3]));
+          byResource.merge(fields[0], sketch, HyperLogLog::merge);
+          if (overall == null) {
+            overall = new HyperLogLog(sketch.getPrecision());
+          }
+          overall.merge(sketch);
+        }
+      }
+    }
+
+    for (Map.Entry<String, HyperLogLog> entry : byResource.entrySet()) {
+      System.out.println(entry.getKey() + "\t" + entry.getValue().estimate());
+    }
+    System.out.println("All resources\t" + (overall == null ? 0L : overall.estimate()));
+  }
+}
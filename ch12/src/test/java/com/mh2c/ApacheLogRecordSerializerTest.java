@@ -0,0 +1,72 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ApacheLogRecordSerializerTest {
+
+  private static final String LOG_LINE =
+    "203.0.113.101 - - [01/Jan/2017:12:34:56 -0500] \"GET /index.html HTTP/1.0\" 200 123 " +
+    "\"http://example.com\" \"MyBrowser\"";
+
+  private Kryo kryo;
+
+  @Before
+  public void setUp() {
+    kryo = new Kryo();
+    new LogProcessorKryoRegistrator().registerClasses(kryo);
+  }
+
+  @Test
+  public void testRoundTrip() {
+    ApacheLogRecord record = new ApacheLogRecord(LOG_LINE);
+
+    Output output = new Output(256, -1);
+    kryo.writeObject(output, record);
+    ApacheLogRecord copy = kryo.readObject(new Input(output.toBytes()), ApacheLogRecord.class);
+
+    assertEquals(record.getIpAddress(), copy.getIpAddress());
+    assertEquals(record.getDateTime(), copy.getDateTime());
+    assertEquals(record.getMethod(), copy.getMethod());
+    assertEquals(record.getResource(), copy.getResource());
+    assertEquals(record.getStatus(), copy.getStatus());
+    assertEquals(record.getBytes(), copy.getBytes());
+    assertEquals(record.getUserAgent(), copy.getUserAgent());
+  }
+
+  @Test
+  public void testSmallerThanJavaSerialization() throws Exception {
+    ApacheLogRecord record = new ApacheLogRecord(LOG_LINE);
+
+    Output output = new Output(256, -1);
+    kryo.writeObject(output, record);
+    ByteArrayOutputStream javaBytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(javaBytes)) {
+      out.writeObject(record);
+    }
+    assertTrue(output.position() * 4 < javaBytes.size());
+  }
+}
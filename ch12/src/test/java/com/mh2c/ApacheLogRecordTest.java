@@ -17,9 +17,18 @@ limitations under the License.
 package com.mh2c;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -52,6 +61,165 @@ public class ApacheLogRecordTest {
     assertEquals("MyBrowser", record.getUserAgent());
   }
 
+  @Test
+  public void testParsingBytes() {
+    String logLine =
+      "203.0.113.101 - - [" + ApacheLogRecord.TIMESTAMP_FORMATTER.format(now) +
+      "] \"GET /caf\u00e9.html HTTP/1.0\" 200 123 - \"MyBrowser \u00fcber\"\r\n";
+
+    record = new ApacheLogRecord(logLine.getBytes(StandardCharsets.UTF_8));
+    assertEquals("/caf\u00e9.html", record.getResource());
+    assertEquals("MyBrowser \u00fcber", record.getUserAgent());
+  }
+
+  @Test
+  public void testGenerationTime() {
+    String logLine =
+      "203.0.113.101 1484859931123 - [" + ApacheLogRecord.TIMESTAMP_FORMATTER.format(now) +
+      "] \"GET /index.html HTTP/1.0\" 200 123 \"http://example.com\" \"MyBrowser\"";
+    ApacheLogRecord.Builder builder = new ApacheLogRecord.Builder();
+
+    assertEquals(1484859931123L,
+                 builder.parse(logLine.getBytes(StandardCharsets.UTF_8)).getGeneratedAt());
+    assertEquals(0L, builder.parse(logLine.replace(" 1484859931123 ", " - ")
+                                   .getBytes(StandardCharsets.UTF_8)).getGeneratedAt());
+  }
+
+  @Test
+  public void testTimestampChanges() {
+    ZonedDateTime later = now.plusSeconds(1L);
+    for (ZonedDateTime dateTime : new ZonedDateTime[] { now, now, later, now }) {
+      record = new ApacheLogRecord(
+        "203.0.113.101 - - [" + ApacheLogRecord.TIMESTAMP_FORMATTER.format(dateTime) +
+        "] \"GET / HTTP/1.0\" 200 1 - \"MyBrowser\"");
+      assertEquals(dateTime.toInstant(), record.getDateTime().toInstant());
+    }
+  }
+
+  @Test
+  public void testReusedBuilder() {
+    // Lines that differ in every field, with one that fails to parse, in
+    // the middle of the others
+    String timestamp = ApacheLogRecord.TIMESTAMP_FORMATTER.format(now);
+    String later = ApacheLogRecord.TIMESTAMP_FORMATTER.format(now.plusSeconds(5L));
+    String[] lines = {
+      "203.0.113.101 - - [" + timestamp + "] \"GET /index.html HTTP/1.0\" 200 123 " +
+      "\"http://example.com\" \"Mozilla/5.0 (X11; Linux x86_64) Chrome/55.0.2883.87 " +
+      "Safari/537.36\"",
+      "198.51.100.7 1484859931123 - [" + later + "] \"POST /caf\u00e9.html HTTP/1.1\" 404 0 " +
+      "- \"Mozilla/5.0 (Windows NT 10.0; rv:50.0) Gecko/20100101 Firefox/50.0\"",
+      "192.0.2.55 - - [" + timestamp + "] \"GET /\" 200 1 - \"curl/7.52.1\"",
+      "192.0.2.56 - frank [" + later + "] \"DELETE /page1 HTTP/1.0\" 500 98765 - " +
+      "\"curl/7.52.1\""
+    };
+    IpAnonymizer anonymizer = new IpAnonymizer.Md5();
+    UserAgentClassifier classifier =
+      new UserAgentClassifier(UserAgentClassifier.DEFAULT_RULES, 10);
+
+    ApacheLogRecord.Builder builder = new ApacheLogRecord.Builder();
+    List<ApacheLogRecord> built = new ArrayList<>();
+    List<ApacheLogRecord> expected = new ArrayList<>();
+    for (String line : lines) {
+      try {
+        builder.parse(line.getBytes(StandardCharsets.UTF_8));
+      } catch (IllegalArgumentException e) {
+        continue;
+      }
+      builder.setIpAddress(anonymizer.anonymize(builder.getIpAddress()));
+      builder.setUserAgent(classifier.categorize(builder.getUserAgent()));
+      built.add(builder.build());
+
+      record = new ApacheLogRecord(line);
+      expected.add(record.withIpAddress(anonymizer.anonymize(record.getIpAddress()))
+                   .withUserAgent(classifier.categorize(record.getUserAgent())));
+    }
+
+    // Building later records leaves the earlier ones as they were
+    assertEquals(3, built.size());
+    for (int i = 0; i < built.size(); i++) {
+      assertEquals(expected.get(i).toString(), built.get(i).toString());
+      assertEquals(expected.get(i).getDateTime().toInstant(),
+                   built.get(i).getDateTime().toInstant());
+    }
+    assertEquals("CHROME", built.get(0).getUserAgent());
+    assertEquals("FIREFOX", built.get(1).getUserAgent());
+    assertEquals(UserAgentClassifier.OTHER, built.get(2).getUserAgent());
+    assertEquals(anonymizer.anonymize("192.0.2.56"), built.get(2).getIpAddress());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParsingFailure() {
+    new ApacheLogRecord("203.0.113.101 - - [01/Jan/2017:00:00:00 +0000] \"GET /\" 200 1 - " +
+                        "\"MyBrowser\"");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testStatusOverflow() {
+    new ApacheLogRecord("203.0.113.101 - - [01/Jan/2017:00:00:00 +0000] " +
+                        "\"GET / HTTP/1.0\" 9999999999 1 - \"MyBrowser\"");
+  }
+
+  // The regular expression that lines were originally parsed with
+  private static final Pattern PARSE_PATTERN = Pattern.compile(
+    "^(\\S+) \\S+ \\S+ \\[([^]]+)\\] \"(\\S+) (\\S+) \\S+\" (\\d+) (\\d+) \\S+ \"([^\"]+)\"$"
+  );
+
+  @Test
+  public void testAcceptsSameLinesAsPattern() {
+    String base = "203.0.113.101 - - [01/Jan/2017:00:00:00 +0000] " +
+      "\"GET /index.html HTTP/1.0\" 200 123 \"http://example.com\" \"MyBrowser\"";
+    char[] replacements = { ' ', '"', '[', ']', '\t', '\n', '\r', '0', 'x', '\u00e9', '\u2028' };
+    Random random = new Random(17L);
+    for (int i = 0; i < 20000; i++) {
+      // Mutate a few characters of a valid line
+      StringBuilder sb = new StringBuilder(base);
+      int mutations = 1 + random.nextInt(3);
+      for (int j = 0; j < mutations; j++) {
+        int pos = random.nextInt(sb.length() + 1);
+        char c = replacements[random.nextInt(replacements.length)];
+        switch (random.nextInt(3)) {
+        case 0:
+          sb.insert(pos, c);
+          break;
+        case 1:
+          if (pos < sb.length()) {
+            sb.deleteCharAt(pos);
+          }
+          break;
+        default:
+          if (pos < sb.length()) {
+            sb.setCharAt(pos, c);
+          }
+          break;
+        }
+      }
+      String line = sb.toString();
+
+      Matcher m = PARSE_PATTERN.matcher(line);
+      boolean matches = m.find();
+      try {
+        ApacheLogRecord parsed = new ApacheLogRecord(line);
+        if (!matches) {
+          fail("Parsed line not matching pattern: " + line);
+        }
+        assertEquals(m.group(1), parsed.getIpAddress());
+        assertEquals(m.group(3), parsed.getMethod());
+        assertEquals(m.group(4), parsed.getResource());
+        assertEquals(Integer.parseInt(m.group(5)), parsed.getStatus());
+        assertEquals(Long.parseLong(m.group(6)), parsed.getBytes());
+        assertEquals(m.group(7), parsed.getUserAgent());
+      } catch (IllegalArgumentException e) {
+        assertFalse("Failed to parse line matching pattern: " + line,
+                    matches && !(e instanceof NumberFormatException));
+      } catch (DateTimeException e) {
+        // Only the timestamp is bad
+        if (!matches) {
+          fail("Parsed line not matching pattern: " + line);
+        }
+      }
+    }
+  }
+
   @Test
   public void testWithIpAddress() {
     record = record.withIpAddress("203.0.113.102");
@@ -0,0 +1,98 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+  private static void addRandom(HyperLogLog sketch, long seed, int count) {
+    Random random = new Random(seed);
+    for (int i = 0; i < count; i++) {
+      sketch.add(random.nextLong());
+    }
+  }
+
+  private static void assertWithin(long expected, long actual, double error) {
+    assertTrue("Estimate " + actual + " for " + expected,
+               Math.abs(actual - expected) <= expected * error);
+  }
+
+  @Test
+  public void testEstimate() {
+    HyperLogLog sketch = new HyperLogLog(12);
+    assertEquals(0L, sketch.estimate());
+
+    addRandom(sketch, 1L, 100);
+    assertWithin(100L, sketch.estimate(), 0.05);
+    addRandom(sketch, 2L, 100000);
+    assertWithin(100100L, sketch.estimate(), 0.05);
+  }
+
+  @Test
+  public void testDuplicates() {
+    HyperLogLog sketch = new HyperLogLog(12);
+    addRandom(sketch, 1L, 1000);
+    long estimate = sketch.estimate();
+    addRandom(sketch, 1L, 1000);
+    assertEquals(estimate, sketch.estimate());
+  }
+
+  @Test
+  public void testMerge() {
+    HyperLogLog first = new HyperLogLog(12);
+    addRandom(first, 1L, 50000);
+    HyperLogLog second = new HyperLogLog(12);
+    addRandom(second, 2L, 50000);
+    HyperLogLog union = new HyperLogLog(12);
+    addRandom(union, 1L, 50000);
+    addRandom(union, 2L, 50000);
+
+    assertEquals(union, first.merge(second));
+    // Merging again changes nothing
+    assertEquals(union, first.merge(second));
+    assertWithin(100000L, first.estimate(), 0.05);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeDifferentPrecision() {
+    new HyperLogLog(12).merge(new HyperLogLog(10));
+  }
+
+  @Test
+  public void testBytes() {
+    HyperLogLog sketch = new HyperLogLog(12);
+    addRandom(sketch, 1L, 10);
+    byte[] sparse = sketch.toBytes();
+    assertEquals(2 + 10 * 3, sparse.length);
+    assertEquals(sketch, HyperLogLog.fromBytes(sparse));
+
+    addRandom(sketch, 2L, 10000);
+    byte[] dense = sketch.toBytes();
+    assertEquals(2 + 4096, dense.length);
+    assertEquals(sketch, HyperLogLog.fromBytes(dense));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMalformedBytes() {
+    HyperLogLog.fromBytes(new byte[] { 12, 0, 1, 2, 3 });
+  }
+}
@@ -0,0 +1,70 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.apache.spark.util.LongAccumulator;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IpAnonymizationCacheTest {
+
+  private LongAccumulator hits;
+  private LongAccumulator misses;
+
+  @Before
+  public void setUp() {
+    hits = new LongAccumulator();
+    misses = new LongAccumulator();
+  }
+
+  @Test
+  public void testHmacSha256() {
+    IpAnonymizer anonymizer = IpAnonymizer.create(IpAnonymizer.HMAC_SHA256, "secret");
+    // echo -n 203.0.113.101 | openssl dgst -sha256 -hmac secret -binary | base64
+    assertEquals("ZDnEf0fYOA5cccz/iUMtsHgaQ3ufEnEI2KHLDhwNtUM=",
+                 anonymizer.anonymize("203.0.113.101"));
+    assertNotEquals(anonymizer.anonymize("203.0.113.101"),
+                    IpAnonymizer.create(IpAnonymizer.HMAC_SHA256, "other")
+                    .anonymize("203.0.113.101"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHmacSha256WithoutKey() {
+    IpAnonymizer.create(IpAnonymizer.HMAC_SHA256, null);
+  }
+
+  @Test
+  public void testCache() {
+    IpAnonymizer anonymizer = IpAnonymizer.create(IpAnonymizer.MD5, null);
+    IpAnonymizationCache cache = new IpAnonymizationCache(anonymizer, 2);
+
+    assertEquals(anonymizer.anonymize("203.0.113.1"),
+                 cache.anonymize("203.0.113.1", hits, misses));
+    cache.anonymize("203.0.113.2", hits, misses);
+    cache.anonymize("203.0.113.1", hits, misses);
+    // Evicts 203.0.113.2, the least recently used
+    cache.anonymize("203.0.113.3", hits, misses);
+    assertEquals(anonymizer.anonymize("203.0.113.1"),
+                 cache.anonymize("203.0.113.1", hits, misses));
+    cache.anonymize("203.0.113.2", hits, misses);
+
+    assertEquals(2L, hits.sum());
+    assertEquals(4L, misses.sum());
+  }
+}
@@ -0,0 +1,113 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+public class KinesisLogSinkTest {
+
+  private static Set<String> allRecords(LocalKinesis kinesis) {
+    Set<String> records = new HashSet<>();
+    for (int i = 0; i < kinesis.getNumShards(); i++) {
+      for (byte[] record : kinesis.getRecords(i)) {
+        assertTrue(records.add(new String(record, StandardCharsets.UTF_8)));
+      }
+    }
+    return records;
+  }
+
+  private static void writeLines(KinesisLogSink sink, int numLines) throws Exception {
+    // Reuse one buffer, as generators do
+    byte[] buffer = new byte[32];
+    for (int i = 0; i < numLines; i++) {
+      byte[] line = ("line " + i).getBytes(StandardCharsets.UTF_8);
+      System.arraycopy(line, 0, buffer, 4, line.length);
+      sink.write(buffer, 4, line.length);
+    }
+  }
+
+  @Test
+  public void testDelivery() throws Exception {
+    LocalKinesis kinesis = new LocalKinesis(4, 0, true);
+    KinesisLogSink sink = new KinesisLogSink(kinesis, "test", 4);
+    writeLines(sink, 2000);
+    sink.close();
+
+    assertEquals(2000L, sink.getNumSent());
+    assertEquals(0L, sink.getNumFailed());
+    Set<String> records = allRecords(kinesis);
+    assertEquals(2000, records.size());
+    assertTrue(records.contains("line 1999"));
+    // Lines are spread across shards
+    for (int i = 0; i < kinesis.getNumShards(); i++) {
+      assertTrue(kinesis.getCount(i) > 300L);
+    }
+  }
+
+  @Test
+  public void testSendsLingeringLines() throws Exception {
+    LocalKinesis kinesis = new LocalKinesis(1, 0, true);
+    KinesisLogSink sink = new KinesisLogSink(kinesis, "test", 1, 10L);
+    try {
+      writeLines(sink, 1);
+      // Far from a full request, but sent anyway without closing
+      long deadline = System.currentTimeMillis() + 10000L;
+      while (kinesis.getCount(0) == 0L && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5L);
+      }
+      assertEquals(1L, kinesis.getCount(0));
+      assertEquals("line 0", new String(kinesis.getRecords(0).get(0), StandardCharsets.UTF_8));
+    } finally {
+      sink.close();
+    }
+    assertEquals(1L, sink.getNumSent());
+  }
+
+  @Test
+  public void testRetriesThrottledLines() throws Exception {
+    LocalKinesis kinesis = new LocalKinesis(2, 400, true);
+    KinesisLogSink sink = new KinesisLogSink(kinesis, "test", 2);
+    writeLines(sink, 1500);
+    sink.close();
+
+    assertEquals(1500L, sink.getNumSent());
+    assertEquals(0L, sink.getNumFailed());
+    assertTrue(sink.getNumRetried() > 0L);
+    assertEquals(1500, allRecords(kinesis).size());
+  }
+
+  @Test
+  public void testRequestSizeLimit() throws Exception {
+    LocalKinesis kinesis = new LocalKinesis(1, 0, false);
+    KinesisLogSink sink = new KinesisLogSink(kinesis, "test", 1);
+    byte[] line = new byte[100 * 1024];
+    Arrays.fill(line, (byte) 'x');
+    for (int i = 0; i < 120; i++) {
+      sink.write(line, 0, line.length);
+    }
+    sink.close();
+
+    assertEquals(120L, sink.getNumSent());
+    assertEquals(0L, sink.getNumRetried());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  private static void assertClose(long expected, long actual) {
+    assertTrue(expected + " vs. " + actual, Math.abs(actual - expected) <= expected / 100L);
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    long[] values = new long[100000];
+    double sum = 0.0;
+    Random random = new Random(11L);
+    for (int i = 0; i < values.length; i++) {
+      // Long-tailed, like latencies
+      values[i] = (long) (1000.0 * Math.exp(random.nextGaussian() * 2.0));
+      histogram.record(values[i]);
+      sum += values[i];
+    }
+    Arrays.sort(values);
+
+    assertEquals(values.length, histogram.getCount());
+    assertEquals(values[0], histogram.getMin());
+    assertEquals(values[values.length - 1], histogram.getMax());
+    for (double percentile : new double[] { 50.0, 90.0, 99.0, 99.9, 99.99 }) {
+      long expected = values[(int) Math.ceil(percentile / 100.0 * values.length) - 1];
+      assertClose(expected, histogram.getValueAtPercentile(percentile));
+    }
+    assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100.0));
+    assertEquals(sum / values.length, histogram.getMean(), 1e-6);
+  }
+
+  @Test
+  public void testAddWithOffset() {
+    LatencyHistogram first = new LatencyHistogram();
+    LatencyHistogram second = new LatencyHistogram();
+    for (long v = 0L; v < 1000L; v++) {
+      first.record(v);
+      second.record(v);
+    }
+    first.add(second, 10000L);
+
+    assertEquals(2000L, first.getCount());
+    assertEquals(0L, first.getMin());
+    assertEquals(10999L, first.getMax());
+    assertClose(10499L, first.getValueAtPercentile(75.0));
+    assertEquals(499L, first.getValueAtPercentile(25.0));
+    assertEquals((999.0 * 1000.0 / 2.0 * 2.0 + 10000.0 * 1000.0) / 2000.0, first.getMean(), 1e-9);
+  }
+
+  @Test
+  public void testNegativeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5L);
+    assertEquals(1L, histogram.getCount());
+    assertEquals(0L, histogram.getMax());
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(3L);
+    histogram.record(123456789L, 4L);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(histogram);
+    }
+    LatencyHistogram copy;
+    try (ObjectInputStream in =
+         new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy = (LatencyHistogram) in.readObject();
+    }
+
+    assertEquals(5L, copy.getCount());
+    assertEquals(3L, copy.getMin());
+    assertEquals(123456789L, copy.getMax());
+    assertEquals(histogram.getMean(), copy.getMean(), 0.0);
+    assertEquals(histogram.getValueAtPercentile(50.0), copy.getValueAtPercentile(50.0));
+    // Only the two non-empty buckets are written
+    assertTrue(bytes.size() < 200);
+  }
+}
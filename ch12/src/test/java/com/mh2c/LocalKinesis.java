@@ -0,0 +1,172 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import com.amazonaws.services.kinesis.model.InvalidArgumentException;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An in-process stand-in for a Kinesis stream, for testing senders of log
+ * lines without AWS. Like Kinesis, it assigns records to shards by the MD5
+ * hash of their partition keys, rejects requests over the PutRecords limits,
+ * and can fail records that exceed a per-shard rate, so that callers see
+ * throttling.
+ */
+class LocalKinesis implements KinesisLogSink.Client {
+
+  static final String THROUGHPUT_EXCEEDED = "ProvisionedThroughputExceededException";
+
+  private static class Shard {
+    private final String id;
+    private final List<byte[]> records = new ArrayList<>();
+    private long count;
+    private long second;
+    private int countThisSecond;
+
+    private Shard(String id) {
+      this.id = id;
+    }
+  }
+
+  private final Shard[] shards;
+  private final int maxRecordsPerShardPerSecond;
+  private final boolean retainRecords;
+
+  /**
+   * Creates a new stream.
+   *
+   * @param numShards number of shards
+   * @param maxRecordsPerShardPerSecond records each shard accepts per second,
+   * or 0 for no limit
+   * @param retainRecords whether to keep the data of each record
+   */
+  LocalKinesis(int numShards, int maxRecordsPerShardPerSecond, boolean retainRecords) {
+    shards = new Shard[numShards];
+    for (int i = 0; i < numShards; i++) {
+      shards[i] = new Shard(String.format("shardId-%012d", i));
+    }
+    this.maxRecordsPerShardPerSecond = maxRecordsPerShardPerSecond;
+    this.retainRecords = retainRecords;
+  }
+
+  @Override
+  public PutRecordsResult putRecords(PutRecordsRequest request) {
+    List<PutRecordsRequestEntry> entries = request.getRecords();
+    if (entries.size() > KinesisLogSink.MAX_RECORDS_PER_REQUEST) {
+      throw new InvalidArgumentException("Too many records in request: " + entries.size());
+    }
+    long requestBytes = 0L;
+    for (PutRecordsRequestEntry entry : entries) {
+      int recordBytes = entry.getData().remaining() + entry.getPartitionKey().length();
+      if (recordBytes > KinesisLogSink.MAX_BYTES_PER_RECORD) {
+        throw new InvalidArgumentException("Record too large: " + recordBytes);
+      }
+      requestBytes += recordBytes;
+    }
+    if (requestBytes > KinesisLogSink.MAX_BYTES_PER_REQUEST) {
+      throw new InvalidArgumentException("Request too large: " + requestBytes);
+    }
+
+    long second = System.currentTimeMillis() / 1000L;
+    List<PutRecordsResultEntry> results = new ArrayList<>(entries.size());
+    int numFailed = 0;
+    for (PutRecordsRequestEntry entry : entries) {
+      Shard shard = shards[shardFor(entry.getPartitionKey())];
+      synchronized (shard) {
+        if (shard.second != second) {
+          shard.second = second;
+          shard.countThisSecond = 0;
+        }
+        if (maxRecordsPerShardPerSecond > 0 &&
+            shard.countThisSecond >= maxRecordsPerShardPerSecond) {
+          results.add(new PutRecordsResultEntry()
+                      .withErrorCode(THROUGHPUT_EXCEEDED)
+                      .withErrorMessage("Rate exceeded for shard " + shard.id));
+          numFailed++;
+          continue;
+        }
+        shard.countThisSecond++;
+        if (retainRecords) {
+          ByteBuffer data = entry.getData().duplicate();
+          byte[] bytes = new byte[data.remaining()];
+          data.get(bytes);
+          shard.records.add(bytes);
+        }
+        results.add(new PutRecordsResultEntry()
+                    .withShardId(shard.id)
+                    .withSequenceNumber(Long.toString(shard.count++)));
+      }
+    }
+    return new PutRecordsResult().withFailedRecordCount(numFailed).withRecords(results);
+  }
+
+  private int shardFor(String partitionKey) {
+    byte[] hash;
+    try {
+      hash = MessageDigest.getInstance("MD5").digest(partitionKey.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not available", e);
+    }
+    // Shards evenly divide the hash key space; the top 31 bits are enough to
+    // place a key
+    long top = ((hash[0] & 0xffL) << 23) | ((hash[1] & 0xffL) << 15) |
+      ((hash[2] & 0xffL) << 7) | ((hash[3] & 0xffL) >>> 1);
+    return (int) ((top * shards.length) >>> 31);
+  }
+
+  /**
+   * Gets the number of shards.
+   *
+   * @return number of shards
+   */
+  int getNumShards() {
+    return shards.length;
+  }
+
+  /**
+   * Gets the number of records put into a shard.
+   *
+   * @param shard shard index
+   * @return number of records
+   */
+  long getCount(int shard) {
+    synchronized (shards[shard]) {
+      return shards[shard].count;
+    }
+  }
+
+  /**
+   * Gets the data of the records put into a shard, in order. Records are only
+   * kept if the stream was created to retain them.
+   *
+   * @param shard shard index
+   * @return record data
+   */
+  List<byte[]> getRecords(int shard) {
+    synchronized (shards[shard]) {
+      return new ArrayList<>(shards[shard].records);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZonedDateTime;
+import org.junit.Test;
+
+public class LogAggregatorTest {
+
+  @Test
+  public void testKey() {
+    ApacheLogRecord record = new ApacheLogRecord("203.0.113.101", ZonedDateTime.now(), "GET",
+                                                 "/index.html", 200, 123L, "CHROME");
+    assertEquals("/index.html\t200\tCHROME", LogAggregator.key(record));
+  }
+
+  @Test
+  public void testInverse() {
+    LogAggregator.Totals first = new LogAggregator.Totals(3L, 300L);
+    LogAggregator.Totals second = new LogAggregator.Totals(2L, 50L);
+
+    LogAggregator.Totals window = first.plus(second);
+    assertEquals(5L, window.getRequests());
+    assertEquals(350L, window.getBytes());
+    assertEquals("5\t350", window.toString());
+
+    // Sliding past both batches empties the window
+    assertEquals(second, window.minus(first));
+    assertFalse(window.minus(first).isEmpty());
+    assertTrue(window.minus(first).minus(second).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWindowShorterThanSlide() {
+    new LogAggregator(1000L, 2000L, 1000L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWindowNotMultipleOfBatchInterval() {
+    new LogAggregator(300000L, 7000L, 7000L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSlideNotMultipleOfBatchInterval() {
+    new LogAggregator(300000L, 1500L, 1000L);
+  }
+
+  @Test
+  public void testDefaultWindow() {
+    assertEquals(300000L, LogAggregator.defaultWindow(1000L));
+    assertEquals(301000L, LogAggregator.defaultWindow(7000L));
+    assertEquals(600000L, LogAggregator.defaultWindow(600000L));
+    // Any batch interval works with the default window
+    new LogAggregator(LogAggregator.defaultWindow(45000L), 45000L, 45000L);
+  }
+}
@@ -0,0 +1,56 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+public class LogCompactorTest {
+
+  private static LogCompactor.Batch batch(long time, long size) {
+    return new LogCompactor.Batch(time, new Path("/logs/_segments/" + time), size);
+  }
+
+  private static List<List<Long>> times(List<List<LogCompactor.Batch>> runs) {
+    return runs.stream()
+      .map(run -> run.stream().map(batch -> batch.time).collect(Collectors.toList()))
+      .collect(Collectors.toList());
+  }
+
+  @Test
+  public void testPlanBySize() {
+    List<LogCompactor.Batch> batches =
+      Arrays.asList(batch(3000L, 120L), batch(1000L, 60L), batch(2000L, 50L), batch(4000L, 30L));
+    // The last batch is too small and too new to merge yet
+    assertEquals(Arrays.asList(Arrays.asList(1000L, 2000L), Arrays.asList(3000L)),
+                 times(LogCompactor.plan(batches, 100L, 10000L, 5000L)));
+  }
+
+  @Test
+  public void testPlanByAge() {
+    List<LogCompactor.Batch> batches = Arrays.asList(batch(1000L, 10L), batch(2000L, 10L));
+    assertTrue(LogCompactor.plan(batches, 100L, 10000L, 10999L).isEmpty());
+    assertEquals(Arrays.asList(Arrays.asList(1000L, 2000L)),
+                 times(LogCompactor.plan(batches, 100L, 10000L, 11000L)));
+  }
+}
@@ -0,0 +1,61 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class LogGenerationEngineTest {
+
+  /**
+   * Collects lines in memory, replacing their generation times and
+   * timestamps.
+   */
+  private static class CollectingSink implements LogSink {
+    private final List<String> lines = new ArrayList<>();
+
+    @Override
+    public synchronized void write(byte[] line, int offset, int length) {
+      String s = new String(line, offset, length, StandardCharsets.UTF_8);
+      // Every line must parse
+      new ApacheLogRecord(s);
+      lines.add(s.replaceFirst(" \\d+ - \\[[^]]+\\]", " - - []"));
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static List<String> generate(long seed) throws Exception {
+    CollectingSink sink = new CollectingSink();
+    new LogGenerationEngine(seed, 100).generate(sink, 3, 0, 10001L);
+    Collections.sort(sink.lines);
+    return sink.lines;
+  }
+
+  @Test
+  public void testGenerate() throws Exception {
+    List<String> lines = generate(1L);
+    assertEquals(10001, lines.size());
+    assertEquals(lines, generate(1L));
+  }
+}
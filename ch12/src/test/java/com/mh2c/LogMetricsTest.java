@@ -0,0 +1,52 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+public class LogMetricsTest {
+
+  @Test
+  public void testRegisteredCount() {
+    MetricRegistry registry = new MetricRegistry();
+    LatencyHistogram latencies = new LatencyHistogram();
+    LogMetrics.register(registry, "latency.ms", latencies);
+    // Reporters only see histograms
+    Histogram histogram = registry.getHistograms().get("latency.ms");
+    assertEquals(0L, histogram.getCount());
+
+    latencies.record(5L);
+    latencies.record(7L, 2L);
+    assertEquals(3L, histogram.getCount());
+    assertEquals(3, histogram.getSnapshot().size());
+    assertEquals(7L, histogram.getSnapshot().getMax());
+
+    // Values added to another histogram count too, as batches are
+    LatencyHistogram batch = new LatencyHistogram();
+    batch.record(9L);
+    latencies.add(batch, 0L);
+    assertEquals(4L, histogram.getCount());
+
+    // Updates through the metric are counted once
+    histogram.update(11L);
+    assertEquals(5L, histogram.getCount());
+  }
+}
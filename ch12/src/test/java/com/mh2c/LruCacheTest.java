@@ -0,0 +1,90 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LruCacheTest {
+
+  @Test
+  public void testSmallCacheEvictsLeastRecentlyUsed() {
+    LruCache<String, String> cache = new LruCache<>(3);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.put("c", "3");
+    assertEquals("1", cache.get("a"));
+    cache.put("d", "4");
+    assertNull(cache.get("b"));
+    assertEquals("1", cache.get("a"));
+    assertEquals("3", cache.get("c"));
+    assertEquals("4", cache.get("d"));
+    assertEquals(3, cache.size());
+  }
+
+  @Test
+  public void testSegmentedCacheStaysWithinSize() {
+    int maxSize = LruCache.MAX_SEGMENTS * LruCache.MIN_SEGMENT_SIZE + 5;
+    LruCache<Integer, Integer> cache = new LruCache<>(maxSize);
+    for (int i = 0; i < maxSize * 3; i++) {
+      cache.put(i, i);
+    }
+    assertTrue(cache.size() <= maxSize);
+    // Keys spread evenly, so each segment fills up
+    assertTrue(cache.size() > maxSize - LruCache.MAX_SEGMENTS);
+    assertEquals(Integer.valueOf(maxSize * 3 - 1), cache.get(maxSize * 3 - 1));
+  }
+
+  @Test
+  public void testConcurrentAccess() throws InterruptedException {
+    int maxSize = 10000;
+    LruCache<Integer, Integer> cache = new LruCache<>(maxSize);
+    List<Thread> threads = new ArrayList<>();
+    List<Throwable> errors = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      int offset = t * 1000;
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 100000; i++) {
+          int key = offset + i % 5000;
+          Integer value = cache.get(key);
+          if (value == null) {
+            cache.put(key, key);
+          } else if (value != key) {
+            throw new AssertionError("Key " + key + " cached as " + value);
+          }
+        }
+      });
+      thread.setUncaughtExceptionHandler((th, e) -> {
+        synchronized (errors) {
+          errors.add(e);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(new ArrayList<Throwable>(), errors);
+    assertTrue(cache.size() <= maxSize);
+  }
+}
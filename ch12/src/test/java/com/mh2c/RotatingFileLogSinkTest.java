@@ -0,0 +1,70 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RotatingFileLogSinkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static void write(LogSink sink, String line) throws Exception {
+    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+    sink.write(bytes, 0, bytes.length);
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testRotates() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    try (LogSink sink = new RotatingFileLogSink(dir, "access", 8L)) {
+      write(sink, "one");
+      write(sink, "two");
+      write(sink, "three");
+    }
+    assertEquals("one\ntwo\n", read(dir.resolve("access-00000.log")));
+    assertEquals("three\n", read(dir.resolve("access-00001.log")));
+  }
+
+  @Test
+  public void testRerunKeepsEarlierFiles() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    try (LogSink sink = new RotatingFileLogSink(dir, "access", 8L)) {
+      write(sink, "one");
+      write(sink, "two");
+      write(sink, "three");
+    }
+    try (LogSink sink = new RotatingFileLogSink(dir, "access", 8L)) {
+      write(sink, "four");
+    }
+    assertEquals("one\ntwo\n", read(dir.resolve("access-00000.log")));
+    assertEquals("three\n", read(dir.resolve("access-00001.log")));
+    assertEquals("four\n", read(dir.resolve("access-00002.log")));
+  }
+}
@@ -0,0 +1,83 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class UserAgentClassifierTest {
+
+  private static final String CHROME =
+    "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) " +
+    "Chrome/55.0.2883.87 Safari/537.36";
+  private static final String OPERA = CHROME + " OPR/42.0.2393.94";
+  private static final String SAFARI =
+    "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_12_1) AppleWebKit/602.2.14 (KHTML, like Gecko) " +
+    "Version/10.0.1 Safari/602.2.14";
+  private static final String FIREFOX =
+    "Mozilla/5.0 (Windows NT 10.0; WOW64; rv:50.0) Gecko/20100101 Firefox/50.0";
+
+  @Test
+  public void testDefaultRules() {
+    UserAgentClassifier classifier =
+      new UserAgentClassifier(UserAgentClassifier.DEFAULT_RULES, 10);
+    assertEquals("OPERA", classifier.categorize(OPERA));
+    assertEquals("CHROME", classifier.categorize(CHROME));
+    assertEquals("SAFARI", classifier.categorize(SAFARI));
+    assertEquals("FIREFOX", classifier.categorize(FIREFOX));
+    assertEquals("IE", classifier.categorize("Mozilla/5.0 (Trident/7.0; rv:11.0) like Gecko"));
+    assertEquals(UserAgentClassifier.OTHER, classifier.categorize("curl/7.52.1"));
+    assertEquals(UserAgentClassifier.OTHER, classifier.categorize(""));
+    // Cached results are the same
+    assertEquals("OPERA", classifier.categorize(OPERA));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMalformedRules() {
+    new UserAgentClassifier("Chrome=CHROME,Safari", 10);
+  }
+
+  @Test
+  public void testMatchesSequentialSearch() {
+    // Overlapping substrings, where failure links matter
+    String[] substrings = { "abcab", "bca", "cab", "aa", "c" };
+    StringBuilder rules = new StringBuilder();
+    for (int i = 0; i < substrings.length; i++) {
+      rules.append(i == 0 ? "" : ",").append(substrings[i]).append("=R").append(i);
+    }
+    UserAgentClassifier classifier = new UserAgentClassifier(rules.toString(), 0);
+
+    Random random = new Random(3L);
+    for (int i = 0; i < 10000; i++) {
+      char[] chars = new char[random.nextInt(12)];
+      for (int j = 0; j < chars.length; j++) {
+        chars[j] = "abcd".charAt(random.nextInt(4));
+      }
+      String userAgent = new String(chars);
+
+      String expected = UserAgentClassifier.OTHER;
+      for (int j = 0; j < substrings.length; j++) {
+        if (userAgent.contains(substrings[j])) {
+          expected = "R" + j;
+          break;
+        }
+      }
+      assertEquals(userAgent, expected, classifier.categorize(userAgent));
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+Copyright 2017 William A. Havanki, Jr.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.mh2c;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import java.time.ZonedDateTime;
+import org.apache.spark.api.java.Optional;
+import org.apache.spark.streaming.StateImpl;
+import org.junit.Test;
+import scala.Option;
+import scala.Tuple2;
+
+public class VisitorCounterTest {
+
+  @Test
+  public void testKey() {
+    VisitorCounter counter = new VisitorCounter(3600000L, 12, 60000L);
+    ApacheLogRecord record =
+      new ApacheLogRecord("203.0.113.101", ZonedDateTime.parse("2017-03-04T05:06:07-05:00"),
+                          "GET", "/index.html", 200, 123L, "CHROME");
+    assertEquals("/index.html\t2017-03-04T10:00:00Z", counter.key(record));
+  }
+
+  @Test
+  public void testHash() {
+    // Eleven characters fill the hash
+    assertEquals(0L, VisitorCounter.hash("AAAAAAAAAAAAAAAAAAAAAA=="));
+    assertEquals(-1L, VisitorCounter.hash("///////////"));
+    assertEquals(1L, VisitorCounter.hash("AAAAAAAAAAB/"));
+
+    IpAnonymizer anonymizer = new IpAnonymizer.Md5();
+    assertNotEquals(VisitorCounter.hash(anonymizer.anonymize("203.0.113.101")),
+                    VisitorCounter.hash(anonymizer.anonymize("203.0.113.102")));
+    // Unencoded addresses are still hashed
+    assertNotEquals(VisitorCounter.hash("203.0.113.101"),
+                    VisitorCounter.hash("203.0.113.102"));
+  }
+
+  @Test
+  public void testUpdateHandsBackChangedSketches() {
+    StateImpl<HyperLogLog> state = new StateImpl<>();
+    state.wrap(Option.empty());
+    Optional<Tuple2<String, HyperLogLog>> first =
+      VisitorCounter.update("key", Optional.of(new HyperLogLog(4).add(1L)), state);
+    assertEquals("key", first.get()._1());
+    assertEquals(new HyperLogLog(4).add(1L), first.get()._2());
+
+    // A later batch hands back the sketch of both batches
+    state.wrap(Option.apply(state.get()));
+    Optional<Tuple2<String, HyperLogLog>> second =
+      VisitorCounter.update("key", Optional.of(new HyperLogLog(4).add(-1L)), state);
+    assertEquals(new HyperLogLog(4).add(1L).add(-1L), second.get()._2());
+    // The first batch's sketch is left as it was handed back
+    assertEquals(new HyperLogLog(4).add(1L), first.get()._2());
+
+    // The sketch was already handed back, so timing out hands back nothing
+    state.wrapTimingOutState(state.get());
+    assertFalse(VisitorCounter.update("key", Optional.empty(), state).isPresent());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadPrecision() {
+    new VisitorCounter(3600000L, 20, 60000L);
+  }
+}